@@ -0,0 +1,44 @@
+package tetris.bench;
+
+import tetris.Board;
+import tetris.Constants;
+
+import java.util.Random;
+
+/**
+ * Boards with locked squares already on them for the benchmarks to start from.
+ */
+final class BenchBoards {
+
+    private BenchBoards() {
+    }
+
+    /**
+     * Returns a board with the bottom rows filled at random, leaving at least one
+     * empty cell in every row so nothing is full. Takes the number of rows and
+     * a seed so the same board is made every run.
+     */
+    static Board stack(int rows, long seed) {
+        Board board = new Board();
+        Random random = new Random(seed);
+        int bottom = board.getHeight() - Constants.BORDER - 1;
+        for (int i = bottom; i > bottom - rows; i--) {
+            int hole = Constants.BORDER + random.nextInt(Constants.BOARD_COLS);
+            for (int j = Constants.BORDER; j < board.getWidth() - Constants.BORDER; j++) {
+                if (j != hole && random.nextInt(4) != 0) {
+                    board.fill(i, j, random.nextInt(Constants.NUM_PIECE_TYPES));
+                }
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Fills every playable cell of the row.
+     */
+    static void fillRow(Board board, int row) {
+        for (int j = Constants.BORDER; j < board.getWidth() - Constants.BORDER; j++) {
+            board.fill(row, j, 0);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package tetris.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks in this package with the GC profiler always on, so every
+ * result is reported as operations per second next to its allocation rate.
+ * Takes the usual JMH command line options, for example a benchmark name
+ * pattern to run only some of them.
+ */
+public class Benchmarks {
+
+    public static void main(String[] argv) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(argv);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine);
+        if (commandLine.getIncludes().isEmpty()) {
+            builder.include(Benchmarks.class.getPackage().getName() + ".");
+        }
+        builder.addProfiler(GCProfiler.class);
+        Options options = builder.build();
+
+        try {
+            new Runner(options).run();
+        }
+        catch (RunnerException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
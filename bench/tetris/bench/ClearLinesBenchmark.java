@@ -0,0 +1,66 @@
+package tetris.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tetris.Board;
+import tetris.Constants;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Line clears on a board with 0 to 4 full rows among ten rows of stack. Each
+ * operation copies the starting board back before clearing, so copyOnly is
+ * there to be subtracted from the clear results.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ClearLinesBenchmark {
+    @Param({"0", "1", "2", "3", "4"})
+    public int fullRows;
+
+    private Board _start;
+    private Board _board;
+    private int _bottom;
+
+    @Setup
+    public void setup() {
+        _start = BenchBoards.stack(10, 2);
+        _bottom = _start.getHeight() - Constants.BORDER - 1;
+        // full rows spread through the stack, as a piece lands over them
+        for (int i = 0; i < fullRows; i++) {
+            BenchBoards.fillRow(_start, _bottom - 2 * i);
+        }
+        _board = new Board();
+    }
+
+    @Benchmark
+    public int clearLines() {
+        _board.copyFrom(_start);
+        return _board.clearLines();
+    }
+
+    @Benchmark
+    public int clearLinesUnderPiece() {
+        _board.copyFrom(_start);
+        return _board.clearLines(_bottom - 6, _bottom);
+    }
+
+    @Benchmark
+    public int copyOnly() {
+        _board.copyFrom(_start);
+        return _board.getStackTop();
+    }
+}
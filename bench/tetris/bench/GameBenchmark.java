@@ -0,0 +1,55 @@
+package tetris.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tetris.Game;
+import tetris.Input;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole headless games from a fixed seed, each piece turned and shifted at
+ * random, dropped a few rows and then hard dropped. The moves come from their
+ * own seeded Random, so every run plays the same games.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GameBenchmark {
+    @Param({"42"})
+    public long seed;
+
+    @Benchmark
+    public int playGame() {
+        Game game = new Game(seed);
+        Random moves = new Random(seed);
+
+        while (!game.isGameOver()) {
+            int turns = moves.nextInt(4);
+            for (int i = 0; i < turns; i++) {
+                game.input(Input.ROTATE);
+            }
+            int shift = moves.nextInt(9) - 4;
+            for (int i = 0; i < Math.abs(shift); i++) {
+                game.input(shift < 0 ? Input.LEFT : Input.RIGHT);
+            }
+            for (int i = 0; i < 3; i++) {
+                game.tick();
+            }
+            game.input(Input.HARD_DROP);
+        }
+        return game.getPiecesPlaced();
+    }
+}
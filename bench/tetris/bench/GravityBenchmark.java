@@ -0,0 +1,57 @@
+package tetris.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tetris.Constants;
+import tetris.Game;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One frame of a game played at the gravity of a level, with the lock delay of
+ * the display, and no inputs, so pieces fall, rest and lock in the middle of
+ * the board. A tick should cost about the same at level 1 as at 20G. The game
+ * starts over when it ends.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GravityBenchmark {
+    @Param({"1", "10", "19"})
+    public int level;
+
+    private Game _game;
+    private long _seed;
+
+    @Setup
+    public void setUp() {
+        this.newGame();
+    }
+
+    private void newGame() {
+        _game = new Game(_seed++);
+        _game.setStartLevel(level);
+        _game.setLockDelay(Constants.LOCK_DELAY_FRAMES);
+    }
+
+    @Benchmark
+    public int tick() {
+        if (_game.isGameOver()) {
+            this.newGame();
+        }
+        _game.tick();
+        return _game.getPiece().getY();
+    }
+}
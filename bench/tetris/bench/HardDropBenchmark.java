@@ -0,0 +1,59 @@
+package tetris.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tetris.Board;
+import tetris.Piece;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dropping a freshly spawned piece onto a stack, with the column tops and by
+ * testing one row at a time the way the SPACE key used to.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HardDropBenchmark {
+    @Param({"0", "6"})
+    public int stackRows;
+
+    private Piece _piece;
+    private int _type;
+
+    @Setup
+    public void setup() {
+        Board board = BenchBoards.stack(stackRows, 3);
+        _piece = new Piece(board, 0);
+    }
+
+    @Benchmark
+    public int drop() {
+        _type = (_type + 1) % 7;
+        _piece.spawn(_type);
+        return _piece.drop();
+    }
+
+    @Benchmark
+    public int dropByRows() {
+        _type = (_type + 1) % 7;
+        _piece.spawn(_type);
+        int rows = 0;
+        while (_piece.moveY()) {
+            rows++;
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,45 @@
+package tetris.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tetris.Perft;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counting every place three pieces can lock on a stack, searching every
+ * location each piece can reach, on the calling thread. The count is the same
+ * every run, so the time for it is a measure of how fast pieces move and
+ * collide.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PerftBenchmark {
+    @Param({"0", "6"})
+    public int stackRows;
+
+    private Perft _perft;
+
+    @Setup
+    public void setup() {
+        _perft = new Perft(BenchBoards.stack(stackRows, 3), Perft.parseTypes("TIJ"));
+    }
+
+    @Benchmark
+    public long count() {
+        return _perft.count(3, null);
+    }
+}
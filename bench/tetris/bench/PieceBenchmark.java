@@ -0,0 +1,73 @@
+package tetris.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tetris.Board;
+import tetris.Constants;
+import tetris.Piece;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single moves of a Piece and the collision test behind them, on a board with a
+ * few rows of locked squares.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PieceBenchmark {
+    @Param({"0", "1", "6"})
+    public int type;
+
+    private Board _board;
+    private Piece _piece;
+    private int _direction;
+
+    @Setup
+    public void setup() {
+        _board = BenchBoards.stack(8, 1);
+        _piece = new Piece(_board, type);
+        _piece.moveY();
+        _direction = 1;
+    }
+
+    @Benchmark
+    public boolean moveY() {
+        if (_piece.moveY()) {
+            return true;
+        }
+        _piece.spawn(type);
+        return false;
+    }
+
+    @Benchmark
+    public boolean moveX() {
+        if (!_piece.moveX(_direction)) {
+            _direction = -_direction;
+            return false;
+        }
+        return true;
+    }
+
+    @Benchmark
+    public boolean rotate() {
+        return _piece.rotate();
+    }
+
+    @Benchmark
+    public boolean collides() {
+        return _board.collides(type, 1, _board.getSpawnX(), Constants.PIECE_ORIGIN_Y + 2);
+    }
+}
@@ -0,0 +1,125 @@
+package tetris;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+/**
+ * Checks that playing allocates nothing once a Game exists. Counts the bytes
+ * the thread allocates, with com.sun.management.ThreadMXBean, around loops of
+ * Piece's moves, turns and drops on a board and around whole games of ticks,
+ * moves and hard drops played by a RandomPolicy, after running the same loops
+ * to warm them up. Only the Games and policies are made outside the
+ * counted loops. A Board makes each chunk of its rows the first time a piece
+ * locks in it, which costs once per chunk however long the game goes on, so
+ * the count of a game starts after its first piece, which makes the only chunk
+ * of a standard board.
+ *
+ * Run with java -cp tetris.jar tetris.AllocationCheck followed by any of
+ * --rounds=N and --seed=S. Prints the bytes each loop allocated and exits with
+ * status 1 if any loop allocated anything.
+ */
+public class AllocationCheck {
+    private com.sun.management.ThreadMXBean _threads;
+    private long _thread;
+    // bytes counted by reading the counter twice with nothing in between
+    private long _overhead;
+
+    /**
+     * Finds the counter of the calling thread. Throws an
+     * UnsupportedOperationException if this Java cannot count allocations.
+     */
+    public AllocationCheck() {
+        _threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!_threads.isThreadAllocatedMemorySupported()) {
+            throw new UnsupportedOperationException("This Java cannot count the bytes a thread allocates");
+        }
+        _threads.setThreadAllocatedMemoryEnabled(true);
+        _thread = Thread.currentThread().getId();
+        for (int i = 0; i < 1000; i++) {
+            _overhead = -_threads.getThreadAllocatedBytes(_thread);
+            _overhead += _threads.getThreadAllocatedBytes(_thread);
+        }
+    }
+
+    /**
+     * Shifts, turns, soft drops and hard drops the game's piece as every type,
+     * spawning it again for every type, and returns the bytes that
+     * allocated. Only the game's piece is moved, so its board is left as it
+     * was.
+     */
+    public long movePieces(Game game, int rounds) {
+        Piece piece = game.getPiece();
+        Board board = game.getBoard();
+        int cols = board.getWidth() - 2 * Constants.BORDER;
+        long start = _threads.getThreadAllocatedBytes(_thread);
+        for (int r = 0; r < rounds; r++) {
+            for (int type = 0; type < Constants.PIECE_COORDS.length; type++) {
+                piece.spawn(type);
+                for (int i = 0; i < Shapes.ORIENTATIONS; i++) {
+                    piece.rotate();
+                }
+                for (int i = 0; i < cols; i++) {
+                    piece.moveX(-1);
+                }
+                for (int i = 0; i < cols; i++) {
+                    piece.moveX(1);
+                }
+                piece.moveY();
+                piece.fall(2);
+                piece.getGhostY();
+                piece.drop();
+            }
+        }
+        return _threads.getThreadAllocatedBytes(_thread) - start - _overhead;
+    }
+
+    /**
+     * Plays the game with the policy until it ends or has placed the most
+     * pieces given and returns the bytes that allocated after the first piece.
+     */
+    public long playGame(Game game, InputPolicy policy, int maxPieces) {
+        policy.play(game);
+        long start = _threads.getThreadAllocatedBytes(_thread);
+        while (!game.isGameOver() && game.getPiecesPlaced() < maxPieces) {
+            policy.play(game);
+            game.tick();
+        }
+        return _threads.getThreadAllocatedBytes(_thread) - start - _overhead;
+    }
+
+    /**
+     * Warms up and then counts every loop, printing what each allocated, and
+     * exits with status 1 if any allocated anything.
+     */
+    public static void main(String[] argv) {
+        Map<String, String> options = Settings.parseArguments(argv);
+        int rounds = Integer.parseInt(options.getOrDefault("rounds", "200"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+
+        AllocationCheck check = new AllocationCheck();
+        Game moving = new Game(seed);
+        long moves = 0;
+        long games = 0;
+        long pieces = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            // the first pass warms the loops up and is not counted
+            moves = check.movePieces(moving, rounds);
+            games = 0;
+            pieces = 0;
+            for (int g = 0; g < rounds; g++) {
+                Game game = new Game(seed + g);
+                InputPolicy policy = new RandomPolicy(seed + g);
+                games += check.playGame(game, policy, 1000);
+                pieces += game.getPiecesPlaced();
+            }
+        }
+
+        System.out.printf("piece moves: %d bytes in %d rounds%n", moves, rounds);
+        System.out.printf("games: %d bytes in %d games of %d pieces%n", games, rounds, pieces);
+        if (moves != 0 || games != 0) {
+            System.out.println("playing allocates");
+            System.exit(1);
+        }
+        System.out.println("playing allocates nothing");
+    }
+}
@@ -5,15 +5,20 @@ import javafx.scene.Scene;
 import javafx.stage.Stage;
 
 /**
- * Sets up stage and instantiates PaneOrganizer class.
+ * Sets up stage and instantiates PaneOrganizer class with the Settings read
+ * from the command line, for example --renderer=canvas. The window is sized to
+ * the part of the board shown at once.
  */
 
 public class App extends Application {
 
     @Override
     public void start(Stage stage) {
-        PaneOrganizer organizer = new PaneOrganizer();
-        Scene scene = new Scene(organizer.getRoot(), Constants.SCENE_WIDTH, Constants.SCENE_HEIGHT);
+        Settings settings = new Settings(this.getParameters().getNamed());
+        PaneOrganizer organizer = new PaneOrganizer(settings);
+        int width = Constants.SQUARE_WIDTH * settings.getViewCols();
+        int height = Constants.SQUARE_WIDTH * settings.getViewRows() + Constants.BOTTOM_PANE_HEIGHT;
+        Scene scene = new Scene(organizer.getRoot(), width, height);
         stage.setScene(scene);
         stage.setTitle("Tetris");
         stage.setResizable(false);
@@ -0,0 +1,233 @@
+package tetris;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * A load generator for a BattleServer. Opens many connections from one thread,
+ * sends random inputs on each and follows both games of every match it is in
+ * with a pair of MirrorBoards, the way a real client would, then reports how
+ * many matches were played and how many frames and bytes came back a second.
+ * Each connection that finishes its match connects again, so the server stays
+ * loaded for the whole run.
+ *
+ * Run with java -cp tetris.jar tetris.BattleClient followed by any of
+ * --clients=N, --host=H, --port=N, --seconds=N and --inputs=N, the inputs each
+ * client sends a second.
+ */
+public class BattleClient {
+    private static final int READ_BYTES = 16384;
+
+    private Selector _selector;
+    private InetSocketAddress _address;
+    private SplittableRandom _random;
+    private int _inputsPerSecond;
+    private long _matches;
+    private long _frames;
+    private long _bytes;
+    private long _badFrames;
+
+    /**
+     * One connection to the server and the games it is following.
+     */
+    private class Connection {
+        private SocketChannel _channel;
+        private ByteBuffer _in;
+        private ByteBuffer _out;
+        private MirrorBoard[] _boards;
+        private long _nextInput;
+
+        /**
+         * Connects to the server.
+         */
+        private Connection() throws IOException {
+            _channel = SocketChannel.open();
+            _channel.configureBlocking(false);
+            _channel.socket().setTcpNoDelay(true);
+            _channel.connect(_address);
+            _channel.register(_selector, SelectionKey.OP_CONNECT, this);
+            _in = ByteBuffer.allocate(READ_BYTES);
+            _out = ByteBuffer.allocate(BattleProtocol.INPUT_SIZE);
+            _boards = new MirrorBoard[2];
+        }
+
+        /**
+         * Reads whatever the server has sent and handles every complete
+         * message. Returns false once the connection has closed.
+         */
+        private boolean read() throws IOException {
+            int read = _channel.read(_in);
+            if (read < 0) {
+                return false;
+            }
+            _bytes += read;
+
+            _in.flip();
+            while (_in.remaining() >= 2 && _in.remaining() >= 2 + (_in.getShort(_in.position()) & 0xffff)) {
+                int length = _in.getShort() & 0xffff;
+                int end = _in.position() + length;
+                this.handle(_in.get());
+                _in.position(end);
+            }
+            _in.compact();
+            return true;
+        }
+
+        /**
+         * Handles a message from the server after its length.
+         */
+        private void handle(byte type) {
+            if (type == BattleProtocol.START) {
+                _in.get();
+                _in.getLong();
+                int rows = _in.getShort();
+                int cols = _in.getShort();
+                _boards[0] = new MirrorBoard(rows, cols);
+                _boards[1] = new MirrorBoard(rows, cols);
+                _matches++;
+            }
+            else if (type == BattleProtocol.FRAME) {
+                int player = _in.get();
+                try {
+                    _boards[player].apply(_in);
+                    _frames++;
+                }
+                catch (IllegalArgumentException e) {
+                    _badFrames++;
+                }
+            }
+        }
+
+        /**
+         * Sends a random input if one is due, unless the last has not gone yet.
+         */
+        private void sendInput(long now) throws IOException {
+            if (_boards[0] == null || now < _nextInput) {
+                return;
+            }
+            _nextInput = now + 1_000_000_000L / _inputsPerSecond;
+            if (_out.position() == 0) {
+                _out.put(BattleProtocol.INPUT);
+                _out.put((byte) _random.nextInt(BattleMatch.INPUTS.length));
+            }
+            _out.flip();
+            _channel.write(_out);
+            _out.compact();
+        }
+    }
+
+    /**
+     * Prepares to connect to the server at the address, sending inputs at the
+     * rate given for each connection.
+     */
+    public BattleClient(InetSocketAddress address, int inputsPerSecond, long seed) throws IOException {
+        _selector = Selector.open();
+        _address = address;
+        _inputsPerSecond = inputsPerSecond;
+        _random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Runs the clients for the number of seconds and prints what they saw.
+     */
+    public void run(int clients, int seconds) throws IOException {
+        for (int i = 0; i < clients; i++) {
+            new Connection();
+        }
+
+        long start = System.nanoTime();
+        long stop = start + seconds * 1_000_000_000L;
+        long nextInputs = start;
+        while (System.nanoTime() - stop < 0) {
+            _selector.select(1);
+            Iterator<SelectionKey> keys = _selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                this.handle(key);
+            }
+
+            long now = System.nanoTime();
+            if (now - nextInputs >= 0) {
+                nextInputs = now + 1_000_000;
+                for (SelectionKey key: _selector.keys()) {
+                    if (key.isValid() && (key.interestOps() & SelectionKey.OP_READ) != 0) {
+                        this.sendInput(key, now);
+                    }
+                }
+            }
+        }
+
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.println(clients + " clients, " + _matches + " matches, "
+                + String.format("%.0f frames/s, %.0f bytes/s", _frames / elapsed, _bytes / elapsed)
+                + (_badFrames > 0 ? ", " + _badFrames + " bad frames" : ""));
+
+        for (SelectionKey key: _selector.keys()) {
+            key.channel().close();
+        }
+        _selector.close();
+    }
+
+    /**
+     * Finishes connecting or reads from the connection of the key, and opens a
+     * new connection in place of one the server has closed.
+     */
+    private void handle(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        boolean open;
+        try {
+            if (key.isConnectable()) {
+                connection._channel.finishConnect();
+                key.interestOps(SelectionKey.OP_READ);
+                open = true;
+            }
+            else {
+                open = connection.read();
+            }
+        }
+        catch (IOException e) {
+            open = false;
+        }
+        if (!open) {
+            key.cancel();
+            connection._channel.close();
+            new Connection();
+        }
+    }
+
+    /**
+     * Sends an input on the connection of the key if one is due.
+     */
+    private void sendInput(SelectionKey key, long now) {
+        Connection connection = (Connection) key.attachment();
+        try {
+            connection.sendInput(now);
+        }
+        catch (IOException e) {
+            // the next read sees the connection has gone and replaces it
+        }
+    }
+
+    /**
+     * Reads the options and runs the clients.
+     */
+    public static void main(String[] argv) throws IOException {
+        Map<String, String> options = Settings.parseArguments(argv);
+        int clients = Integer.parseInt(options.getOrDefault("clients", "100"));
+        String host = options.getOrDefault("host", "127.0.0.1");
+        int port = Integer.parseInt(options.getOrDefault("port", Integer.toString(BattleProtocol.DEFAULT_PORT)));
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "10"));
+        int inputs = Integer.parseInt(options.getOrDefault("inputs", "10"));
+
+        BattleClient client = new BattleClient(new InetSocketAddress(host, port), inputs, System.nanoTime());
+        client.run(clients, seconds);
+    }
+}
@@ -0,0 +1,135 @@
+package tetris;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+/**
+ * A versus match between two BattleSessions, each playing its own Game with the
+ * same seed so both get the same pieces. The server steps every match once a
+ * frame: both games tick, the garbage each game sent by clearing rows is given
+ * to the other with a hole in a random column, and both clients are sent a
+ * frame of every game that changed. The match ends when a game is over or a
+ * player leaves, and the other player wins.
+ */
+public class BattleMatch {
+    static final Input[] INPUTS = Input.values();
+
+    private BattleSession[] _sessions;
+    private Game[] _games;
+    private BoardDelta[] _deltas;
+    private SplittableRandom _random;
+    private int _cols;
+    private boolean _over;
+
+    /**
+     * Starts a match between the two sessions on boards of the size, with
+     * gravity following the level from the starting level and the standard
+     * lock delay, and sends both clients the START message.
+     */
+    public BattleMatch(BattleSession first, BattleSession second, long seed, int rows, int cols, int level) {
+        _sessions = new BattleSession[] { first, second };
+        _games = new Game[2];
+        _deltas = new BoardDelta[2];
+        _random = new SplittableRandom(seed);
+        _cols = cols;
+        for (int i = 0; i < 2; i++) {
+            _games[i] = new Game(seed, rows, cols);
+            _games[i].setStartLevel(level);
+            _games[i].setLockDelay(Constants.LOCK_DELAY_FRAMES);
+            _deltas[i] = new BoardDelta(_games[i]);
+        }
+        for (int i = 0; i < 2; i++) {
+            _sessions[i].start(this, i, seed, rows, cols);
+        }
+    }
+
+    /**
+     * Returns the most bytes a frame of either game can take.
+     */
+    public int maxFrameSize() {
+        return _deltas[0].maxFrameSize();
+    }
+
+    /**
+     * Applies an input from the player to their game.
+     */
+    public void input(int player, Input input) {
+        if (!_over) {
+            _games[player].input(input);
+        }
+    }
+
+    /**
+     * Moves the match forward by one frame and sends both clients what changed,
+     * writing each frame once into the scratch buffer, which must have room for
+     * maxFrameSize(). Ends the match if a game is over.
+     */
+    public void step(ByteBuffer scratch) {
+        if (_over) {
+            return;
+        }
+
+        for (int i = 0; i < 2; i++) {
+            _games[i].tick();
+            _sessions[i].startTick();
+        }
+        for (int i = 0; i < 2; i++) {
+            int attack = _games[i].takeAttack();
+            if (attack > 0) {
+                _games[1 - i].addGarbage(attack, _random.nextInt(_cols));
+            }
+        }
+
+        for (int i = 0; i < 2; i++) {
+            boolean changed = _deltas[i].hasChanges();
+            scratch.clear();
+            if (changed) {
+                _deltas[i].writeFrame(scratch, false);
+            }
+            scratch.flip();
+            for (int s = 0; s < 2; s++) {
+                if (changed || _sessions[s].needsKeyframe(i)) {
+                    _sessions[s].sendFrame(i, _deltas[i], scratch);
+                }
+            }
+            _deltas[i].clear();
+        }
+
+        if (_games[0].isGameOver() || _games[1].isGameOver()) {
+            int winner = _games[0].isGameOver() ? (_games[1].isGameOver() ? -1 : 1) : 0;
+            this.end(winner);
+        }
+        else {
+            for (int s = 0; s < 2; s++) {
+                _sessions[s].flush();
+            }
+        }
+    }
+
+    /**
+     * Called by a session when its player has left. The other player wins.
+     */
+    public void left(int player) {
+        this.end(1 - player);
+    }
+
+    /**
+     * Returns whether the match has ended.
+     */
+    public boolean isOver() {
+        return _over;
+    }
+
+    /**
+     * Ends the match and sends both clients the winner.
+     */
+    private void end(int winner) {
+        if (_over) {
+            return;
+        }
+        _over = true;
+        for (int s = 0; s < 2; s++) {
+            _sessions[s].end(winner);
+        }
+    }
+}
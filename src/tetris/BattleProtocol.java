@@ -0,0 +1,39 @@
+package tetris;
+
+/**
+ * The messages passed between a BattleServer and its clients. A client sends
+ * its inputs as two bytes each, INPUT and the Input's ordinal, and nothing
+ * else. Every message from the server starts with a short giving the length of
+ * the rest of the message and a type byte:
+ *
+ * START: the player's number, 0 or 1, then the seed of both games as a long
+ * and the playable rows and columns of the board as shorts. Sent when a match
+ * begins.
+ *
+ * FRAME: the number of the player whose game it is, then a BoardDelta frame.
+ * Both players get the frames of both games. The first frame of each game is a
+ * keyframe, and so is the next one after any frame a client was too slow to
+ * take.
+ *
+ * END: the number of the player who won, or -1 if both games ended on the
+ * same tick. The server closes the connection after sending it.
+ */
+public final class BattleProtocol {
+    public static final int DEFAULT_PORT = 7777;
+
+    // client to server
+    public static final byte INPUT = 1;
+    public static final int INPUT_SIZE = 2;
+
+    // server to client
+    public static final byte START = 1;
+    public static final byte FRAME = 2;
+    public static final byte END = 3;
+    // length short and type byte before every message from the server
+    public static final int HEADER = 3;
+    public static final int START_SIZE = HEADER + 13;
+    public static final int END_SIZE = HEADER + 1;
+
+    private BattleProtocol() {
+    }
+}
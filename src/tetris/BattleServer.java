@@ -0,0 +1,239 @@
+package tetris;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Hosts versus matches for many clients from one thread. A single Selector
+ * accepts connections, reads inputs and writes output for every client, and in
+ * between steps every BattleMatch Constants.FRAME_RATE times a second, so the
+ * server needs no thread per client and no locks. Clients are paired into
+ * matches in the order they connect. Each client takes a BattleSession with
+ * buffers of a fixed size, and each match two small Games, so the memory a
+ * client costs is bounded however it behaves. The messages are described in
+ * BattleProtocol.
+ *
+ * Run with java -cp tetris.jar tetris.BattleServer followed by any of
+ * --port=N, --seed=S, --rows=N, --cols=N and --level=N. It only listens on the
+ * loopback address.
+ */
+public class BattleServer {
+    // bytes of output queued for each client before frames are dropped
+    public static final int OUTPUT_BYTES = 4096;
+
+    private static final long STEP_NANOS = 1_000_000_000L / Constants.FRAME_RATE;
+    // most steps run to catch up after a stall before the lost time is skipped
+    private static final int MAX_CATCH_UP_STEPS = 15;
+
+    private Selector _selector;
+    private ServerSocketChannel _server;
+    private ArrayList<BattleMatch> _matches;
+    private BattleSession _waiting;
+    private SplittableRandom _random;
+    private int _rows;
+    private int _cols;
+    private int _level;
+    private ByteBuffer _scratch;
+    private volatile boolean _running;
+    private long _matchesStarted;
+
+    /**
+     * Opens the server socket at the address. Every match is seeded from the
+     * seed passed in and played on a board of the playable rows and columns
+     * starting at the level. Throws an IllegalArgumentException if a keyframe
+     * of the board would not fit in a client's output buffer.
+     */
+    public BattleServer(InetSocketAddress address, long seed, int rows, int cols, int level) throws IOException {
+        _rows = rows;
+        _cols = cols;
+        _level = level;
+        _random = new SplittableRandom(seed);
+        _matches = new ArrayList<BattleMatch>();
+
+        int maxFrame = BoardDelta.maxFrameSize(rows, cols);
+        if (BattleProtocol.HEADER + 1 + maxFrame > OUTPUT_BYTES / 2) {
+            throw new IllegalArgumentException("A " + cols + "x" + rows + " board is too big to send to clients");
+        }
+        _scratch = ByteBuffer.allocate(maxFrame);
+
+        _selector = Selector.open();
+        _server = ServerSocketChannel.open();
+        _server.bind(address, 1024);
+        _server.configureBlocking(false);
+        _server.register(_selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Returns the port the server is listening on, which is chosen by the
+     * system if the address had port 0.
+     */
+    public int getPort() {
+        return _server.socket().getLocalPort();
+    }
+
+    /**
+     * Returns how many matches are being played.
+     */
+    public int getMatchCount() {
+        return _matches.size();
+    }
+
+    /**
+     * Returns how many matches have started since the server opened.
+     */
+    public long getMatchesStarted() {
+        return _matchesStarted;
+    }
+
+    /**
+     * Runs the server on the calling thread until close() is called. Waits in
+     * the selector until the next step is due, handles whatever the clients
+     * sent or can take in the meantime, then runs every step that has come due.
+     */
+    public void run() throws IOException {
+        _running = true;
+        long next = System.nanoTime();
+        try {
+            while (_running) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    _selector.select((wait + 999_999) / 1_000_000);
+                }
+                else {
+                    _selector.selectNow();
+                }
+
+                Iterator<SelectionKey> keys = _selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    this.handle(key);
+                }
+
+                int steps = 0;
+                while (System.nanoTime() - next >= 0 && steps < MAX_CATCH_UP_STEPS) {
+                    this.step();
+                    next += STEP_NANOS;
+                    steps++;
+                }
+                if (System.nanoTime() - next >= 0) {
+                    next = System.nanoTime();
+                }
+            }
+        }
+        finally {
+            this.closeAll();
+        }
+    }
+
+    /**
+     * Stops the server. Safe to call from any thread.
+     */
+    public void close() {
+        _running = false;
+        _selector.wakeup();
+    }
+
+    /**
+     * Accepts new clients, or reads from or writes to the client of the key.
+     */
+    private void handle(SelectionKey key) throws IOException {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            this.accept();
+            return;
+        }
+
+        BattleSession session = (BattleSession) key.attachment();
+        if (key.isReadable()) {
+            session.read();
+        }
+        if (key.isValid() && key.isWritable()) {
+            session.flush();
+        }
+    }
+
+    /**
+     * Accepts every waiting connection and pairs each one with the client
+     * waiting for an opponent, or makes it the one waiting.
+     */
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = _server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(_selector, SelectionKey.OP_READ);
+            BattleSession session = new BattleSession(channel, key, OUTPUT_BYTES);
+            key.attach(session);
+
+            if (_waiting == null || _waiting.isClosed()) {
+                _waiting = session;
+            }
+            else {
+                _matches.add(new BattleMatch(_waiting, session, _random.nextLong(), _rows, _cols, _level));
+                _matchesStarted++;
+                _waiting = null;
+            }
+        }
+    }
+
+    /**
+     * Steps every match once and forgets the ones that have ended.
+     */
+    private void step() {
+        for (int i = 0; i < _matches.size(); i++) {
+            _matches.get(i).step(_scratch);
+        }
+        int kept = 0;
+        for (int i = 0; i < _matches.size(); i++) {
+            if (!_matches.get(i).isOver()) {
+                _matches.set(kept++, _matches.get(i));
+            }
+        }
+        while (_matches.size() > kept) {
+            _matches.remove(_matches.size() - 1);
+        }
+    }
+
+    /**
+     * Closes every connection and the server socket.
+     */
+    private void closeAll() throws IOException {
+        for (SelectionKey key: _selector.keys()) {
+            if (key.attachment() instanceof BattleSession) {
+                ((BattleSession) key.attachment()).close();
+            }
+        }
+        _server.close();
+        _selector.close();
+    }
+
+    /**
+     * Reads the options and runs the server until the program is stopped.
+     */
+    public static void main(String[] argv) throws IOException {
+        Map<String, String> options = Settings.parseArguments(argv);
+        int port = Integer.parseInt(options.getOrDefault("port", Integer.toString(BattleProtocol.DEFAULT_PORT)));
+        long seed = Long.parseLong(options.getOrDefault("seed", Long.toString(System.nanoTime())));
+        int rows = Integer.parseInt(options.getOrDefault("rows", Integer.toString(Constants.BOARD_ROWS)));
+        int cols = Integer.parseInt(options.getOrDefault("cols", Integer.toString(Constants.BOARD_COLS)));
+        int level = Integer.parseInt(options.getOrDefault("level", "1"));
+
+        BattleServer server = new BattleServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), seed,
+                rows, cols, level);
+        System.out.println("Battle server listening on port " + server.getPort());
+        server.run();
+    }
+}
@@ -0,0 +1,231 @@
+package tetris;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * One client connected to a BattleServer. Reads the client's inputs and passes
+ * them to its BattleMatch, and queues messages for the client in an output
+ * buffer of a fixed size that is written out whenever the socket will take
+ * it. A session never holds more than its two buffers, however slow its
+ * client: a frame that does not fit is dropped and the session asks for a
+ * keyframe of that game instead once there is room again.
+ */
+public class BattleSession {
+    // most inputs applied in one tick, enough to cross the board and turn
+    public static final int MAX_INPUTS_PER_TICK = 16;
+
+    private SocketChannel _channel;
+    private SelectionKey _key;
+    private ByteBuffer _input;
+    private ByteBuffer _output;
+    private BattleMatch _match;
+    private int _player;
+    // whether each game's next frame for this client has to be a keyframe
+    private boolean[] _needsKeyframe;
+    private int _inputsThisTick;
+    private boolean _closing;
+    private boolean _closed;
+
+    /**
+     * Takes the client's channel, already registered with the server's
+     * selector under the key, and the size of the output buffer.
+     */
+    public BattleSession(SocketChannel channel, SelectionKey key, int outputBytes) {
+        _channel = channel;
+        _key = key;
+        _input = ByteBuffer.allocate(16 * BattleProtocol.INPUT_SIZE);
+        _output = ByteBuffer.allocate(outputBytes);
+        _needsKeyframe = new boolean[] { true, true };
+    }
+
+    /**
+     * Puts the session in a match as the player numbered 0 or 1 and sends the
+     * client the START message.
+     */
+    public void start(BattleMatch match, int player, long seed, int rows, int cols) {
+        _match = match;
+        _player = player;
+        _output.putShort((short) (BattleProtocol.START_SIZE - 2));
+        _output.put(BattleProtocol.START);
+        _output.put((byte) player);
+        _output.putLong(seed);
+        _output.putShort((short) rows);
+        _output.putShort((short) cols);
+        this.flush();
+    }
+
+    /**
+     * Reads whatever the client has sent and applies each complete input to the
+     * match, at most MAX_INPUTS_PER_TICK a tick so a client cannot make the
+     * server do unbounded work. Inputs past that are dropped. Closes the
+     * session if the client has gone or sent something that is not an input.
+     */
+    public void read() {
+        int read;
+        try {
+            read = _channel.read(_input);
+        }
+        catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            this.close();
+            return;
+        }
+
+        _input.flip();
+        while (_input.remaining() >= BattleProtocol.INPUT_SIZE) {
+            byte type = _input.get();
+            int code = _input.get() & 0xff;
+            if (type != BattleProtocol.INPUT || code >= BattleMatch.INPUTS.length) {
+                this.close();
+                return;
+            }
+            if (_match != null && _inputsThisTick < MAX_INPUTS_PER_TICK) {
+                _inputsThisTick++;
+                _match.input(_player, BattleMatch.INPUTS[code]);
+            }
+        }
+        _input.compact();
+    }
+
+    /**
+     * Starts counting the inputs of the next tick.
+     */
+    public void startTick() {
+        _inputsThisTick = 0;
+    }
+
+    /**
+     * Queues a frame of one player's game, or a keyframe if the client missed a
+     * frame of it, if there is room. The frame for every client is written once
+     * into the buffer passed in, positioned at its start, and copied from
+     * there. Room for the END message is always left.
+     */
+    public void sendFrame(int player, BoardDelta delta, ByteBuffer frame) {
+        if (_closing) {
+            return;
+        }
+
+        int room = _output.remaining() - BattleProtocol.END_SIZE;
+        if (_needsKeyframe[player]) {
+            int size = BattleProtocol.HEADER + 1 + delta.frameSize(true);
+            if (room >= size) {
+                this.putFrameHeader(size, player);
+                delta.writeFrame(_output, true);
+                _needsKeyframe[player] = false;
+            }
+        }
+        else if (room >= BattleProtocol.HEADER + 1 + frame.remaining()) {
+            this.putFrameHeader(BattleProtocol.HEADER + 1 + frame.remaining(), player);
+            _output.put(frame.duplicate());
+        }
+        else {
+            _needsKeyframe[player] = true;
+        }
+    }
+
+    /**
+     * Returns whether a frame of the player's game has been dropped and the
+     * client is waiting for a keyframe.
+     */
+    public boolean needsKeyframe(int player) {
+        return _needsKeyframe[player];
+    }
+
+    /**
+     * Queues the END message and closes the session once it has been written.
+     * The END message always has room, since frames leave room for it.
+     */
+    public void end(int winner) {
+        if (_closing) {
+            return;
+        }
+        _output.putShort((short) (BattleProtocol.END_SIZE - 2));
+        _output.put(BattleProtocol.END);
+        _output.put((byte) winner);
+        _closing = true;
+        _match = null;
+        this.flush();
+    }
+
+    /**
+     * Writes as much of the queued output as the socket takes, and asks the
+     * selector to say when it can take more if any is left. Closes the session
+     * once everything is written after END.
+     */
+    public void flush() {
+        if (_closed) {
+            return;
+        }
+        _output.flip();
+        try {
+            _channel.write(_output);
+        }
+        catch (IOException e) {
+            _output.clear();
+            this.close();
+            return;
+        }
+        _output.compact();
+
+        if (_output.position() > 0) {
+            _key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+        else if (_closing) {
+            this.close();
+        }
+        else {
+            _key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Returns whether there is output waiting to be written.
+     */
+    public boolean hasOutput() {
+        return _output.position() > 0;
+    }
+
+    /**
+     * Closes the connection and tells the match the player has left.
+     */
+    public void close() {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        _closing = true;
+        _key.cancel();
+        try {
+            _channel.close();
+        }
+        catch (IOException e) {
+            // the connection is gone either way
+        }
+        if (_match != null) {
+            BattleMatch match = _match;
+            _match = null;
+            match.left(_player);
+        }
+    }
+
+    /**
+     * Returns whether the connection has been closed.
+     */
+    public boolean isClosed() {
+        return _closed;
+    }
+
+    /**
+     * Writes the length, type and player of a FRAME message of the size.
+     */
+    private void putFrameHeader(int size, int player) {
+        _output.putShort((short) (size - 2));
+        _output.put(BattleProtocol.FRAME);
+        _output.put((byte) player);
+    }
+}
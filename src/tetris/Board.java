@@ -0,0 +1,571 @@
+package tetris;
+
+import java.util.Arrays;
+
+/**
+ * Logical representation of the game board. Each row is stored as a bitmask
+ * with one bit per column, in as many longs as the width needs, so checking a
+ * cell is a single AND and checking for a full row is a compare per 64 columns.
+ * The border around the playable space is folded into every row as bits that
+ * are always set, so pieces collide with it the same way they collide with
+ * locked pieces. The type of piece in each cell is kept separately in bytes,
+ * which are only needed to draw the board. The board also keeps the highest
+ * filled row of every column, which lets it work out how far a piece can drop
+ * without testing every row on the way down.
+ *
+ * The size of the board is chosen when it is made, and it can be very tall or
+ * wide. Rows are kept in chunks of CHUNK_ROWS rows. Every chunk of rows above
+ * the stack is the same shared chunk of empty rows, which is never written and
+ * is only replaced by a chunk of its own the first time something locks in it.
+ * Cell bytes are only made for chunks something has locked in. Making, copying
+ * and clearing a board, and clearing lines, only visit the chunks from the top
+ * of the stack down, so their cost follows how full the board is rather than
+ * how tall.
+ */
+public class Board {
+    // cell values, pieces are stored as their type plus one
+    public static final byte EMPTY = 0;
+    public static final byte BORDER_CELL = 8;
+    public static final byte GARBAGE_CELL = 9;
+    // rows kept together in a chunk, a power of two
+    public static final int CHUNK_ROWS = 64;
+
+    private static final int CHUNK_SHIFT = Integer.numberOfTrailingZeros(CHUNK_ROWS);
+
+    private int _height;
+    private int _width;
+    // longs in each row of bits
+    private int _words;
+    // chunks of row bits, and of cell bytes where something has locked
+    private long[][] _bits;
+    private byte[][] _cells;
+    // chunk of empty rows shared by every chunk that has never been filled
+    private long[] _emptyChunk;
+    private int[] _tops;
+    // highest filled row in the playable space, everything above it is empty
+    private int _stackTop;
+    private int[] _clearedRows;
+    private int _clearedCount;
+    // bits of a row with only the border filled and with every column filled
+    private long[] _emptyRow;
+    private long[] _fullRow;
+
+    /**
+     * Creates a board of the standard size, Constants.BOARD_ROWS by
+     * Constants.BOARD_COLS.
+     */
+    public Board() {
+        this(Constants.BOARD_ROWS, Constants.BOARD_COLS);
+    }
+
+    /**
+     * Creates the rows with room for the border on every side and fills in the
+     * border cells. Takes the number of playable rows and columns, which must
+     * leave room for every piece.
+     */
+    public Board(int rows, int cols) {
+        if (rows < Constants.MIN_BOARD_ROWS || cols < Constants.MIN_BOARD_COLS) {
+            throw new IllegalArgumentException("Board of " + cols + "x" + rows + " is smaller than "
+                    + Constants.MIN_BOARD_COLS + "x" + Constants.MIN_BOARD_ROWS);
+        }
+        _height = rows + 2 * Constants.BORDER;
+        _width = cols + 2 * Constants.BORDER;
+        _words = (_width + 63) >>> 6;
+        _bits = new long[(_height + CHUNK_ROWS - 1) >> CHUNK_SHIFT][];
+        _cells = new byte[_bits.length][];
+        _tops = new int[_width];
+        _clearedRows = new int[rows];
+
+        _emptyRow = new long[_words];
+        _fullRow = new long[_words];
+        for (int j = 0; j < _width; j++) {
+            _fullRow[j >>> 6] |= 1L << j;
+            if (j < Constants.BORDER || j >= _width - Constants.BORDER) {
+                _emptyRow[j >>> 6] |= 1L << j;
+            }
+        }
+        _emptyChunk = new long[CHUNK_ROWS * _words];
+        for (int i = 0; i < CHUNK_ROWS; i++) {
+            System.arraycopy(_emptyRow, 0, _emptyChunk, i * _words, _words);
+        }
+
+        this.setBorder();
+    }
+
+    /**
+     * Creates a copy of the board passed in. The chunks above the stack are all
+     * empty, so they share the empty chunk and only the chunks from the top of
+     * the stack down, and the one holding the top border, are copied.
+     */
+    public Board(Board other) {
+        _height = other._height;
+        _width = other._width;
+        _words = other._words;
+        _emptyChunk = other._emptyChunk;
+        _bits = new long[other._bits.length][];
+        _cells = new byte[other._cells.length][];
+        int first = other._stackTop >> CHUNK_SHIFT;
+        Arrays.fill(_bits, _emptyChunk);
+        if (first > 0) {
+            _bits[0] = other._bits[0].clone();
+        }
+        for (int c = first; c < _bits.length; c++) {
+            if (other._bits[c] != _emptyChunk) {
+                _bits[c] = other._bits[c].clone();
+            }
+            if (other._cells[c] != null) {
+                _cells[c] = other._cells[c].clone();
+            }
+        }
+        _tops = other._tops.clone();
+        _stackTop = other._stackTop;
+        _clearedRows = new int[other._clearedRows.length];
+        _emptyRow = other._emptyRow;
+        _fullRow = other._fullRow;
+    }
+
+    /**
+     * Makes this board a copy of the board passed in, which must be the same
+     * size. Only the rows from the higher of the two stack tops down are
+     * copied, since every row above both is empty on both boards.
+     */
+    public void copyFrom(Board other) {
+        int row = Math.min(_stackTop, other._stackTop);
+        int bottom = _height - Constants.BORDER;
+        while (row < bottom) {
+            int c = row >> CHUNK_SHIFT;
+            int end = Math.min(bottom, (c + 1) << CHUNK_SHIFT);
+            int offset = row & (CHUNK_ROWS - 1);
+            long[] bits = other._bits[c];
+            if (bits != other._emptyChunk || _bits[c] != _emptyChunk) {
+                System.arraycopy(bits, offset * _words, this.bitsChunk(row), offset * _words, (end - row) * _words);
+            }
+            byte[] cells = other._cells[c];
+            if (cells != null) {
+                System.arraycopy(cells, offset * _width, this.cellChunk(row), offset * _width, (end - row) * _width);
+            }
+            else {
+                for (int i = row; i < end; i++) {
+                    this.emptyCells(i);
+                }
+            }
+            row = end;
+        }
+        System.arraycopy(other._tops, 0, _tops, 0, _width);
+        _stackTop = other._stackTop;
+        _clearedCount = 0;
+    }
+
+    /**
+     * Empties the playable space, leaving only the border. Only the rows from
+     * the top of the stack down are touched.
+     */
+    public void clear() {
+        for (int i = _stackTop; i < _height - Constants.BORDER; i++) {
+            this.emptyRow(i);
+        }
+        this.resetTops();
+        _clearedCount = 0;
+    }
+
+    /**
+     * Points every chunk at the empty chunk, then fills in the rows along the
+     * top and bottom of the board in chunks of their own. The cells of the
+     * border rows are left to get(), which reports filled bits with no cell
+     * bytes as the border.
+     */
+    private void setBorder() {
+        Arrays.fill(_bits, _emptyChunk);
+        for (int i = 0; i < Constants.BORDER; i++) {
+            System.arraycopy(_fullRow, 0, this.bitsChunk(i), (i & (CHUNK_ROWS - 1)) * _words, _words);
+            int bottom = _height - 1 - i;
+            System.arraycopy(_fullRow, 0, this.bitsChunk(bottom), (bottom & (CHUNK_ROWS - 1)) * _words, _words);
+        }
+        this.resetTops();
+    }
+
+    /**
+     * Sets the top of every playable column and of the stack to the bottom
+     * border, and the top of the border columns to the top row.
+     */
+    private void resetTops() {
+        for (int j = 0; j < _width; j++) {
+            boolean borderCol = j < Constants.BORDER || j >= _width - Constants.BORDER;
+            _tops[j] = borderCol ? 0 : _height - Constants.BORDER;
+        }
+        _stackTop = _height - Constants.BORDER;
+    }
+
+    /**
+     * Returns the chunk of row bits holding the row to write to, giving it a
+     * copy of the empty chunk of its own if it is still shared.
+     */
+    private long[] bitsChunk(int row) {
+        long[] chunk = _bits[row >> CHUNK_SHIFT];
+        if (chunk == _emptyChunk) {
+            chunk = _emptyChunk.clone();
+            _bits[row >> CHUNK_SHIFT] = chunk;
+        }
+        return chunk;
+    }
+
+    /**
+     * Returns the chunk of cell bytes holding the row, making it with only its
+     * border columns filled if it does not exist yet.
+     */
+    private byte[] cellChunk(int row) {
+        byte[] chunk = _cells[row >> CHUNK_SHIFT];
+        if (chunk == null) {
+            chunk = new byte[CHUNK_ROWS * _width];
+            for (int i = 0; i < CHUNK_ROWS; i++) {
+                for (int j = 0; j < Constants.BORDER; j++) {
+                    chunk[i * _width + j] = BORDER_CELL;
+                    chunk[i * _width + _width - 1 - j] = BORDER_CELL;
+                }
+            }
+            // a border row in the chunk is filled all the way across
+            int first = row & ~(CHUNK_ROWS - 1);
+            for (int i = first; i < first + CHUNK_ROWS && i < _height; i++) {
+                if (i < Constants.BORDER || i >= _height - Constants.BORDER) {
+                    Arrays.fill(chunk, (i - first) * _width, (i - first + 1) * _width, BORDER_CELL);
+                }
+            }
+            _cells[row >> CHUNK_SHIFT] = chunk;
+        }
+        return chunk;
+    }
+
+    /**
+     * Returns the number of rows including the border.
+     */
+    public int getHeight() {
+        return _height;
+    }
+
+    /**
+     * Returns the number of columns including the border.
+     */
+    public int getWidth() {
+        return _width;
+    }
+
+    /**
+     * Returns the column new pieces spawn in, the middle of the board.
+     */
+    public int getSpawnX() {
+        return Constants.BORDER + (_width - 2 * Constants.BORDER) / 2;
+    }
+
+    /**
+     * Returns the value stored in the cell, either EMPTY, BORDER_CELL or the
+     * piece type plus one. Only used for drawing, the rules look at the bits.
+     */
+    public byte get(int row, int col) {
+        byte[] chunk = _cells[row >> CHUNK_SHIFT];
+        if (chunk == null) {
+            // nothing has locked in these rows, so only the border is filled
+            return this.isFilled(row, col) ? BORDER_CELL : EMPTY;
+        }
+        return chunk[(row & (CHUNK_ROWS - 1)) * _width + col];
+    }
+
+    /**
+     * Returns how many longs each row of bits takes.
+     */
+    public int getWords() {
+        return _words;
+    }
+
+    /**
+     * Returns one long of the bits of the row, where bit i of word w is set if
+     * column 64 * w + i is filled.
+     */
+    public long getRowBits(int row, int word) {
+        return _bits[row >> CHUNK_SHIFT][(row & (CHUNK_ROWS - 1)) * _words + word];
+    }
+
+    /**
+     * Returns the row of the highest filled cell in the column, which is the
+     * bottom border row if nothing has locked in the column.
+     */
+    public int getTop(int col) {
+        return _tops[col];
+    }
+
+    /**
+     * Returns the highest filled row in the playable space. Every row above it
+     * is empty.
+     */
+    public int getStackTop() {
+        return _stackTop;
+    }
+
+    /**
+     * Returns whether the cell is filled by either the border or a locked piece.
+     */
+    public boolean isFilled(int row, int col) {
+        return (_bits[row >> CHUNK_SHIFT][(row & (CHUNK_ROWS - 1)) * _words + (col >>> 6)] & 1L << col) != 0;
+    }
+
+    /**
+     * Fills the cell with a square of the given piece type.
+     */
+    public void fill(int row, int col, int type) {
+        this.bitsChunk(row)[(row & (CHUNK_ROWS - 1)) * _words + (col >>> 6)] |= 1L << col;
+        this.cellChunk(row)[(row & (CHUNK_ROWS - 1)) * _width + col] = (byte) (type + 1);
+        if (row < _tops[col]) {
+            _tops[col] = row;
+        }
+        if (row < _stackTop) {
+            _stackTop = row;
+        }
+    }
+
+    /**
+     * Returns whether a piece of the type and orientation would overlap the
+     * border or anything locked on the board if its location were (x, y).
+     * Tests each row of the piece against the board with one AND, or two when
+     * the piece straddles two longs of a wide row.
+     */
+    public boolean collides(int type, int orientation, int x, int y) {
+        int index = Shapes.index(type, orientation);
+        int left = x + Shapes.MIN_DX[index];
+        int top = y + Shapes.MIN_DY[index];
+        int width = Shapes.WIDTH[index];
+        int height = Shapes.HEIGHT[index];
+
+        if (left < 0 || top < 0 || left + width > _width || top + height > _height) {
+            return true;
+        }
+
+        int word = left >>> 6;
+        int bit = left & 63;
+        for (int i = 0; i < height; i++) {
+            long mask = Shapes.ROW_MASKS[index * Shapes.SQUARES + i];
+            int row = top + i;
+            long[] bits = _bits[row >> CHUNK_SHIFT];
+            int at = (row & (CHUNK_ROWS - 1)) * _words + word;
+            if ((bits[at] >>> bit & mask) != 0) {
+                return true;
+            }
+            if (bit > 64 - width && (bits[at + 1] << (64 - bit) & mask) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns how many rows a piece of the type and orientation at (x, y) can
+     * fall before it lands. When the piece is above the highest filled cell of
+     * every column it covers, this is the smallest gap between the bottom of
+     * the piece in a column and the top of that column, found without looking
+     * at any rows. A piece that has been slid under an overhang falls back to
+     * testing one row at a time.
+     */
+    public int dropDistance(int type, int orientation, int x, int y) {
+        int index = Shapes.index(type, orientation);
+        int left = x + Shapes.MIN_DX[index];
+        int distance = Integer.MAX_VALUE;
+
+        for (int i = 0; i < Shapes.WIDTH[index]; i++) {
+            int gap = _tops[left + i] - (y + Shapes.BOTTOM[index * Shapes.SQUARES + i]) - 1;
+            if (gap < 0) {
+                return this.stepDistance(type, orientation, x, y);
+            }
+            distance = Math.min(distance, gap);
+        }
+        return distance;
+    }
+
+    /**
+     * Returns how many rows a piece can fall by testing each row below it in turn.
+     */
+    private int stepDistance(int type, int orientation, int x, int y) {
+        int distance = 0;
+        while (!this.collides(type, orientation, x, y + distance + 1)) {
+            distance++;
+        }
+        return distance;
+    }
+
+    /**
+     * Fills the cells covered by a piece of the type and orientation at (x, y).
+     */
+    public void place(int type, int orientation, int x, int y) {
+        int index = Shapes.index(type, orientation);
+        for (int i = 0; i < Shapes.SQUARES; i++) {
+            this.fill(y + Shapes.DY[index * Shapes.SQUARES + i], x + Shapes.DX[index * Shapes.SQUARES + i], type);
+        }
+    }
+
+    /**
+     * Returns whether or not the row is full.
+     */
+    public boolean rowIsFull(int row) {
+        long[] bits = _bits[row >> CHUNK_SHIFT];
+        int at = (row & (CHUNK_ROWS - 1)) * _words;
+        for (int w = 0; w < _words; w++) {
+            if (bits[at + w] != _fullRow[w]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether any cell in the top playable row is filled.
+     */
+    public boolean topRowIsFilled() {
+        return _stackTop <= Constants.BORDER;
+    }
+
+    /**
+     * Removes every full row, moving all the rows above it down, and returns
+     * the number of rows cleared.
+     */
+    public int clearLines() {
+        return this.clearLines(_stackTop, _height - Constants.BORDER - 1);
+    }
+
+    /**
+     * Removes the full rows between the top and bottom rows passed in, which
+     * after a piece locks are the only rows that can have become full. Returns
+     * the number of rows cleared, and keeps which rows they were until the next
+     * clear for getClearedRows().
+     *
+     * The rows are compacted in one pass from the lowest cleared row up to the
+     * top of the stack, so each remaining row is moved at most once however many
+     * rows were cleared, and the empty rows above the stack are never touched.
+     */
+    public int clearLines(int top, int bottom) {
+        _clearedCount = 0;
+        for (int i = top; i <= bottom; i++) {
+            if (this.rowIsFull(i)) {
+                _clearedRows[_clearedCount++] = i;
+            }
+        }
+
+        if (_clearedCount == 0) {
+            return 0;
+        }
+
+        int write = _clearedRows[_clearedCount - 1];
+        for (int read = write; read >= _stackTop; read--) {
+            if (!this.rowIsFull(read)) {
+                if (write != read) {
+                    this.moveRow(read, write);
+                }
+                write--;
+            }
+        }
+        for (int i = write; i >= _stackTop; i--) {
+            this.emptyRow(i);
+        }
+
+        this.updateTops();
+        return _clearedCount;
+    }
+
+    /**
+     * Pushes every row of the stack up by one and fills the bottom row with
+     * garbage in every playable column but the hole. Returns false without
+     * changing anything if the stack already reaches the top row and has no
+     * room to move up. Takes time in proportion to the rows of the stack.
+     */
+    public boolean addGarbage(int hole) {
+        if (_stackTop <= Constants.BORDER) {
+            return false;
+        }
+
+        int bottom = _height - Constants.BORDER - 1;
+        for (int i = _stackTop; i <= bottom; i++) {
+            this.moveRow(i, i - 1);
+        }
+        this.emptyRow(bottom);
+        for (int j = Constants.BORDER; j < _width - Constants.BORDER; j++) {
+            if (_tops[j] <= bottom) {
+                _tops[j]--;
+            }
+        }
+        _stackTop--;
+        for (int j = Constants.BORDER; j < _width - Constants.BORDER; j++) {
+            if (j != hole) {
+                this.fill(bottom, j, GARBAGE_CELL - 1);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the rows removed by the last call to clearLines, from top to
+     * bottom, as they were numbered before the rows above them moved down. Only
+     * the first getClearedCount() entries are used, and the array is reused by
+     * the next clear.
+     */
+    public int[] getClearedRows() {
+        return _clearedRows;
+    }
+
+    /**
+     * Returns the number of rows removed by the last call to clearLines.
+     */
+    public int getClearedCount() {
+        return _clearedCount;
+    }
+
+    /**
+     * Finds the highest filled cell of every column after rows have been
+     * cleared. Rows only ever move down, so each column is searched downwards
+     * from its old top until a filled cell is found, which at worst is the
+     * bottom border.
+     */
+    private void updateTops() {
+        _stackTop = _height - Constants.BORDER;
+        for (int j = Constants.BORDER; j < _width - Constants.BORDER; j++) {
+            int row = _tops[j];
+            while (!this.isFilled(row, j)) {
+                row++;
+            }
+            _tops[j] = row;
+            _stackTop = Math.min(_stackTop, row);
+        }
+    }
+
+    /**
+     * Copies the bits and cells of one row over another.
+     */
+    private void moveRow(int from, int to) {
+        System.arraycopy(_bits[from >> CHUNK_SHIFT], (from & (CHUNK_ROWS - 1)) * _words, this.bitsChunk(to),
+                (to & (CHUNK_ROWS - 1)) * _words, _words);
+        byte[] source = _cells[from >> CHUNK_SHIFT];
+        if (source != null) {
+            System.arraycopy(source, (from & (CHUNK_ROWS - 1)) * _width, this.cellChunk(to),
+                    (to & (CHUNK_ROWS - 1)) * _width, _width);
+        }
+        else {
+            this.emptyCells(to);
+        }
+    }
+
+    /**
+     * Sets the row to have only its border cells filled.
+     */
+    private void emptyRow(int row) {
+        if (_bits[row >> CHUNK_SHIFT] != _emptyChunk) {
+            System.arraycopy(_emptyRow, 0, _bits[row >> CHUNK_SHIFT], (row & (CHUNK_ROWS - 1)) * _words, _words);
+        }
+        this.emptyCells(row);
+    }
+
+    /**
+     * Empties the playable cell bytes of the row, if its chunk has been made.
+     */
+    private void emptyCells(int row) {
+        byte[] chunk = _cells[row >> CHUNK_SHIFT];
+        if (chunk != null) {
+            int offset = (row & (CHUNK_ROWS - 1)) * _width;
+            Arrays.fill(chunk, offset + Constants.BORDER, offset + _width - Constants.BORDER, EMPTY);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package tetris;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Follows a Game through its listener and keeps the band of rows that have
+ * changed since the last frame, so the game can be sent to another process as
+ * small frames instead of the whole board. A frame holds the tick, the current
+ * piece, the waiting garbage, the top of the stack and the changed rows, each
+ * row packed as the bits of its playable columns. Every row above the top of
+ * the stack is empty, so rows that empty out when lines are cleared are not
+ * sent: the reader empties the rows between the old and new top of the stack
+ * itself. A keyframe holds every row from the top of the stack down and the
+ * reader empties every row above it, so a keyframe brings a MirrorBoard up to
+ * date whatever it missed.
+ *
+ * A frame also lists the rows cleared since the last frame, so a reader can
+ * show them going, each numbered as it was when it was cleared. Up to
+ * MAX_CLEARED are kept; the rows themselves are always right either way.
+ *
+ * A frame is a tick int, a flags byte (KEYFRAME, GAME_OVER), the piece's type
+ * and orientation bytes and x and y ints, the waiting garbage and top of the
+ * stack as ints, the first row and number of rows as ints, the number of
+ * cleared rows as a byte followed by the cleared rows as ints, then the rows,
+ * getRowBytes() bytes each, lowest column first. Rows and columns are ints so
+ * a frame can describe a board of any height; only a board whose keyframe
+ * would not fit in an int of bytes is refused.
+ */
+public class BoardDelta implements GameListener {
+    public static final int KEYFRAME = 1;
+    public static final int GAME_OVER = 2;
+    // bytes of a frame other than its cleared rows and rows
+    public static final int FRAME_HEADER = 32;
+    // most cleared rows a frame lists
+    public static final int MAX_CLEARED = 64;
+
+    private Game _game;
+    private int _rowBytes;
+    // rows that have changed since the last frame, none when top > bottom
+    private int _dirtyTop;
+    private int _dirtyBottom;
+    // whether the piece or the end of the game has changed since the last frame
+    private boolean _pieceChanged;
+    private boolean _endChanged;
+    // the waiting garbage the last frame said
+    private int _sentGarbage;
+    // rows cleared since the last frame, in the order they were cleared
+    private int[] _cleared;
+    private int _clearedCount;
+
+    /**
+     * Starts following the game, with every row of the stack counted as changed
+     * so the first frame has the whole stack.
+     */
+    public BoardDelta(Game game) {
+        _game = game;
+        _rowBytes = (game.getBoard().getWidth() - 2 * Constants.BORDER + 7) / 8;
+        _cleared = new int[MAX_CLEARED];
+        _game.addListener(this);
+        this.gameRestored();
+    }
+
+    /**
+     * Returns how many bytes each row of a frame takes.
+     */
+    public int getRowBytes() {
+        return _rowBytes;
+    }
+
+    /**
+     * Returns the most bytes a frame of this game can take, which is the size
+     * of a keyframe of a full board with every cleared row listed.
+     */
+    public int maxFrameSize() {
+        return maxFrameSize(_game.getBoard().getHeight() - 2 * Constants.BORDER,
+                _game.getBoard().getWidth() - 2 * Constants.BORDER);
+    }
+
+    /**
+     * Returns the most bytes a frame of a game on a board of the playable rows
+     * and columns can take. Throws an IllegalArgumentException if that is more
+     * than a ByteBuffer can hold.
+     */
+    public static int maxFrameSize(int rows, int cols) {
+        long size = FRAME_HEADER + 4L * MAX_CLEARED + (long) rows * ((cols + 7) / 8);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A frame of a " + cols + "x" + rows + " board would not fit in a buffer");
+        }
+        return (int) size;
+    }
+
+    /**
+     * Returns whether anything a frame holds has changed since the last one.
+     */
+    public boolean hasChanges() {
+        return _dirtyTop <= _dirtyBottom || _pieceChanged || _endChanged || _game.getPendingGarbage() != _sentGarbage;
+    }
+
+    /**
+     * Returns how many bytes the next frame takes, or the next keyframe.
+     */
+    public int frameSize(boolean keyframe) {
+        int rows = keyframe ? this.bottom() + 1 - _game.getBoard().getStackTop() : this.dirtyRows();
+        return FRAME_HEADER + 4 * _clearedCount + Math.max(0, rows) * _rowBytes;
+    }
+
+    /**
+     * Writes a frame with the rows changed since the last one, or a keyframe
+     * with the whole stack, into the buffer, which must have room for it. Does
+     * not start counting changes again, so the same frame can be written for
+     * many readers before calling clear().
+     */
+    public void writeFrame(ByteBuffer buffer, boolean keyframe) {
+        Board board = _game.getBoard();
+        Piece piece = _game.getPiece();
+        int count = keyframe ? this.bottom() + 1 - board.getStackTop() : this.dirtyRows();
+        int first = keyframe || count == 0 ? board.getStackTop() : _dirtyTop;
+
+        buffer.putInt(_game.getTicks());
+        buffer.put((byte) ((keyframe ? KEYFRAME : 0) | (_game.isGameOver() ? GAME_OVER : 0)));
+        buffer.put((byte) piece.getType());
+        buffer.put((byte) piece.getOrientation());
+        buffer.putInt(piece.getX());
+        buffer.putInt(piece.getY());
+        buffer.putInt(_game.getPendingGarbage());
+        buffer.putInt(board.getStackTop());
+        buffer.putInt(first);
+        buffer.putInt(count);
+        buffer.put((byte) _clearedCount);
+        for (int i = 0; i < _clearedCount; i++) {
+            buffer.putInt(_cleared[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            this.writeRow(buffer, board, first + i);
+        }
+    }
+
+    /**
+     * Starts counting changes again after a frame has been written for every
+     * reader.
+     */
+    public void clear() {
+        _dirtyTop = Integer.MAX_VALUE;
+        _dirtyBottom = Integer.MIN_VALUE;
+        _pieceChanged = false;
+        _endChanged = false;
+        _sentGarbage = _game.getPendingGarbage();
+        _clearedCount = 0;
+    }
+
+    /**
+     * Counts the new piece as changed.
+     */
+    @Override
+    public void pieceSpawned(Piece piece) {
+        _pieceChanged = true;
+    }
+
+    /**
+     * Counts the piece as changed.
+     */
+    @Override
+    public void pieceMoved(Piece piece) {
+        _pieceChanged = true;
+    }
+
+    /**
+     * Counts the rows of the locked piece as changed.
+     */
+    @Override
+    public void pieceLocked(Piece piece) {
+        this.mark(piece.getTopRow(), piece.getBottomRow());
+    }
+
+    /**
+     * Counts every row from the top of the stack down to the lowest cleared row
+     * as changed and keeps the cleared rows for the next frame. The rows above
+     * the stack that emptied are left to the reader.
+     */
+    @Override
+    public void linesCleared(int[] rows, int count) {
+        this.mark(_game.getBoard().getStackTop(), rows[count - 1]);
+        for (int i = 0; i < count && _clearedCount < MAX_CLEARED; i++) {
+            _cleared[_clearedCount++] = rows[i];
+        }
+    }
+
+    /**
+     * Counts every row of the stack as changed, since all of them moved up.
+     */
+    @Override
+    public void garbageAdded(int rows) {
+        this.mark(_game.getBoard().getStackTop(), this.bottom());
+    }
+
+    /**
+     * Counts every row of the stack, the piece and the end of the game as
+     * changed.
+     */
+    @Override
+    public void gameRestored() {
+        this.clear();
+        _pieceChanged = true;
+        _endChanged = true;
+        this.mark(_game.getBoard().getStackTop(), this.bottom());
+    }
+
+    /**
+     * Counts the end of the game as changed.
+     */
+    @Override
+    public void gameOver() {
+        _endChanged = true;
+    }
+
+    /**
+     * Adds the rows from top to bottom to the changed band.
+     */
+    private void mark(int top, int bottom) {
+        _dirtyTop = Math.min(_dirtyTop, top);
+        _dirtyBottom = Math.max(_dirtyBottom, bottom);
+    }
+
+    /**
+     * Returns how many rows are in the changed band.
+     */
+    private int dirtyRows() {
+        return _dirtyTop <= _dirtyBottom ? _dirtyBottom - _dirtyTop + 1 : 0;
+    }
+
+    /**
+     * Returns the lowest playable row.
+     */
+    private int bottom() {
+        return _game.getBoard().getHeight() - Constants.BORDER - 1;
+    }
+
+    /**
+     * Writes the bits of the playable columns of the row, eight to a byte,
+     * lowest column in the lowest bit.
+     */
+    private void writeRow(ByteBuffer buffer, Board board, int row) {
+        int cols = board.getWidth() - 2 * Constants.BORDER;
+        for (int b = 0; b < _rowBytes; b++) {
+            int col = Constants.BORDER + 8 * b;
+            int word = col >>> 6;
+            int offset = col & 63;
+            long bits = board.getRowBits(row, word) >>> offset;
+            if (offset > 56 && word + 1 < board.getWords()) {
+                bits |= board.getRowBits(row, word + 1) << (64 - offset);
+            }
+            int left = cols - 8 * b;
+            if (left < 8) {
+                bits &= (1L << left) - 1;
+            }
+            buffer.put((byte) bits);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package tetris;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays the game by itself. For each new piece it tries every placement it can
+ * reach from the piece's current state by turning, shifting and hard dropping,
+ * and scores the board each one leaves with the Weights. It looks ahead through
+ * the preview queue, placing the next pieces on every resulting board, and picks
+ * the placement that leads to the best board. The first level of placements is
+ * searched in parallel on a ForkJoinPool. Scores of searched boards are kept in
+ * a TranspositionTable, so a board and queue reached again by another order of
+ * moves is not searched twice. The table lives as long as the Bot, but the
+ * next piece's search seldom finds anything from this one's, since every queue
+ * it looks up ends with the piece that has just come into the preview.
+ *
+ * The chosen placement is turned into Inputs and given to the Game with
+ * Game.input, the same way keyboard input is, so the Bot plays by exactly the
+ * same rules with or without a display.
+ */
+public class Bot implements InputPolicy {
+    private Weights _weights;
+    private int _depth;
+    private ForkJoinPool _pool;
+    private TranspositionTable _table;
+
+    /**
+     * Takes the weights to score boards with, how many pieces to place in each
+     * line of search, counting the current piece, the pool to search on and
+     * the table to cache scores in, which may be null to search without one.
+     * The pool may also be null to search on the calling thread, for when many
+     * games already run in parallel.
+     * Searches deeper than the preview queue allows are cut short.
+     */
+    public Bot(Weights weights, int depth, ForkJoinPool pool, TranspositionTable table) {
+        _weights = weights;
+        _depth = Math.max(1, Math.min(depth, Constants.PREVIEW_SIZE + 1));
+        _pool = pool;
+        _table = table;
+    }
+
+    /**
+     * Creates a Bot with its own transposition table of the default size.
+     */
+    public Bot(Weights weights, int depth, ForkJoinPool pool) {
+        this(weights, depth, pool, new TranspositionTable(Constants.TRANSPOSITION_ENTRIES));
+    }
+
+    /**
+     * Creates a Bot with the default weights, looking two pieces ahead on the
+     * common pool.
+     */
+    public Bot() {
+        this(new Weights(), 2, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Chooses where to put the Game's current piece and plays the moves to put
+     * it there, ending with a hard drop.
+     */
+    @Override
+    public void play(Game game) {
+        for (Input input: this.plan(game)) {
+            game.input(input);
+        }
+    }
+
+    /**
+     * Returns the moves that put the Game's current piece in the best placement
+     * found, ending with a hard drop. Returns no moves if the game is over.
+     */
+    public Input[] plan(Game game) {
+        if (game.isGameOver()) {
+            return new Input[0];
+        }
+
+        Board board = game.getBoard();
+        Piece piece = game.getPiece();
+        int[] upcoming = new int[_depth - 1];
+        for (int i = 0; i < upcoming.length; i++) {
+            upcoming[i] = game.getGenerator().peek(i);
+        }
+
+        final List<SearchTask> tasks = new ArrayList<SearchTask>();
+        for (Placement placement: placements(board, piece)) {
+            tasks.add(new SearchTask(board, placement, upcoming));
+        }
+        if (_pool != null) {
+            _pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    ForkJoinTask.invokeAll(tasks);
+                }
+            });
+        }
+        else {
+            for (SearchTask task: tasks) {
+                task.invoke();
+            }
+        }
+
+        Placement best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (SearchTask task: tasks) {
+            double score = task.join();
+            if (best == null || score > bestScore) {
+                best = task.placement();
+                bestScore = score;
+            }
+        }
+
+        if (best == null) {
+            return new Input[] { Input.HARD_DROP };
+        }
+        return best.toInputs();
+    }
+
+    /**
+     * Returns the best score reachable from the board by placing the pieces of
+     * the types passed in, starting at the index, one after another. Boards are
+     * scored once every piece has been placed, plus the score of every line
+     * cleared along the way. Takes a board for each level of the search to place
+     * pieces on.
+     */
+    private double search(Board board, int[] types, int index, Board[] scratch) {
+        long hash = 0;
+        int depth = types.length - index;
+        if (_table != null) {
+            hash = Zobrist.hash(board) ^ Zobrist.queue(types, index);
+            double cached = _table.get(hash, depth);
+            if (!Double.isNaN(cached)) {
+                return cached;
+            }
+        }
+
+        Piece piece = new Piece(board, types[index]);
+        if (piece.isBlocked()) {
+            return Double.NEGATIVE_INFINITY;
+        }
+
+        double best = Double.NEGATIVE_INFINITY;
+        Board child = scratch[index];
+        for (Placement placement: placements(board, piece)) {
+            child.copyFrom(board);
+            int lines = placement.placeOn(child);
+            double score = _weights.scoreLines(lines);
+            if (index + 1 < types.length) {
+                score += this.search(child, types, index + 1, scratch);
+            }
+            else {
+                score += _weights.scoreBoard(child);
+            }
+            best = Math.max(best, score);
+        }
+
+        if (_table != null) {
+            _table.put(hash, depth, best);
+        }
+        return best;
+    }
+
+    /**
+     * Returns the table scores are cached in, or null if there is none.
+     */
+    public TranspositionTable getTable() {
+        return _table;
+    }
+
+    /**
+     * Returns every distinct placement of the piece that can be reached by
+     * turning it from its current state, then shifting it left or right, then
+     * hard dropping it. The moves are tried on a copy of the piece with the same
+     * rules the Game uses, kicks included. Placements that land in the same
+     * location and orientation are only returned once. The row each column and
+     * orientation first landed on is kept, so the check takes memory in
+     * proportion to the width of the board rather than its area, and only a
+     * second landing row in the same column has to be looked for in the list.
+     */
+    public static List<Placement> placements(Board board, Piece start) {
+        List<Placement> placements = new ArrayList<Placement>();
+        int[] landed = new int[board.getWidth() * Shapes.ORIENTATIONS];
+        Piece piece = new Piece(board, start.getType());
+
+        for (int turns = 0; turns < Shapes.ORIENTATIONS; turns++) {
+            piece.copyFrom(start);
+            boolean turned = true;
+            for (int i = 0; i < turns && turned; i++) {
+                turned = piece.rotate();
+            }
+            if (!turned) {
+                continue;
+            }
+
+            int x = piece.getX();
+            int y = piece.getY();
+            for (int direction = -1; direction <= 1; direction += 2) {
+                piece.setLocation(start.getType(), x, y, piece.getOrientation());
+                int shift = 0;
+                do {
+                    int landing = piece.getY() + board.dropDistance(piece.getType(), piece.getOrientation(), piece.getX(), piece.getY());
+                    int key = piece.getX() * Shapes.ORIENTATIONS + piece.getOrientation();
+                    boolean seen = landed[key] == landing + 1
+                            || landed[key] != 0 && contains(placements, piece.getX(), landing, piece.getOrientation());
+                    if (!seen) {
+                        if (landed[key] == 0) {
+                            landed[key] = landing + 1;
+                        }
+                        placements.add(new Placement(piece.getType(), turns, shift, piece.getX(), landing, piece.getOrientation()));
+                    }
+                    shift += direction;
+                } while (piece.moveX(direction));
+            }
+        }
+        return placements;
+    }
+
+    /**
+     * Returns whether one of the placements lands at (x, y) in the orientation.
+     */
+    private static boolean contains(List<Placement> placements, int x, int y, int orientation) {
+        for (int i = 0; i < placements.size(); i++) {
+            Placement placement = placements.get(i);
+            if (placement.getX() == x && placement.getY() == y && placement.getOrientation() == orientation) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A place a piece can be put, along with the moves that get it there from
+     * where it started: how many times it is turned, then how many columns it is
+     * shifted, negative for left, before it is hard dropped.
+     */
+    public static class Placement {
+        private int _type;
+        private int _turns;
+        private int _shift;
+        private int _x;
+        private int _y;
+        private int _orientation;
+
+        /**
+         * Takes the piece type, the moves and where the piece lands.
+         */
+        public Placement(int type, int turns, int shift, int x, int y, int orientation) {
+            _type = type;
+            _turns = turns;
+            _shift = shift;
+            _x = x;
+            _y = y;
+            _orientation = orientation;
+        }
+
+        /**
+         * Places the piece on the board where it lands, clears the rows it
+         * completes and returns how many were cleared.
+         */
+        public int placeOn(Board board) {
+            board.place(_type, _orientation, _x, _y);
+            int top = _y + Shapes.MIN_DY[Shapes.index(_type, _orientation)];
+            return board.clearLines(top, top + Shapes.HEIGHT[Shapes.index(_type, _orientation)] - 1);
+        }
+
+        /**
+         * Returns the moves that put the piece here: turns, then shifts, then a
+         * hard drop.
+         */
+        public Input[] toInputs() {
+            Input[] inputs = new Input[_turns + Math.abs(_shift) + 1];
+            int i = 0;
+            for (int j = 0; j < _turns; j++) {
+                inputs[i++] = Input.ROTATE;
+            }
+            for (int j = 0; j < Math.abs(_shift); j++) {
+                inputs[i++] = _shift < 0 ? Input.LEFT : Input.RIGHT;
+            }
+            inputs[i] = Input.HARD_DROP;
+            return inputs;
+        }
+
+        public int getType() {
+            return _type;
+        }
+
+        public int getX() {
+            return _x;
+        }
+
+        public int getY() {
+            return _y;
+        }
+
+        public int getOrientation() {
+            return _orientation;
+        }
+    }
+
+    /**
+     * Scores one placement of the current piece by searching the rest of the
+     * upcoming pieces on its own copies of the board, so tasks can run in
+     * parallel.
+     */
+    private class SearchTask extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        private Board _board;
+        private Placement _placement;
+        private int[] _upcoming;
+
+        SearchTask(Board board, Placement placement, int[] upcoming) {
+            _board = board;
+            _placement = placement;
+            _upcoming = upcoming;
+        }
+
+        Placement placement() {
+            return _placement;
+        }
+
+        @Override
+        protected Double compute() {
+            Board child = new Board(_board);
+            int lines = _placement.placeOn(child);
+            double score = _weights.scoreLines(lines);
+            if (_upcoming.length == 0) {
+                return score + _weights.scoreBoard(child);
+            }
+
+            Board[] scratch = new Board[_upcoming.length];
+            for (int i = 0; i < scratch.length; i++) {
+                scratch[i] = new Board(child);
+            }
+            return score + search(child, _upcoming, 0, scratch);
+        }
+    }
+}
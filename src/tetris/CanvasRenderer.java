@@ -0,0 +1,230 @@
+package tetris;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+
+/**
+ * Draws a Game onto a single Canvas instead of using a node for every square, so
+ * the scene graph stays small however full the board gets. Only the cells that
+ * have changed are redrawn: when the piece moves, the cells it and its ghost
+ * covered before and the cells they cover now; when rows are cleared, the band
+ * of rows from the top of the stack down to the lowest cleared row.
+ *
+ * The canvas only covers a Viewport of the board, so boards of any size take
+ * the same memory to draw. Cells outside the view are skipped, and when the
+ * view scrolls to follow the piece everything in it is redrawn.
+ */
+public class CanvasRenderer implements Renderer {
+    private Game _game;
+    private Viewport _viewport;
+    private GraphicsContext _graphics;
+    // cells covered by the piece and its ghost when they were last drawn
+    private int[] _drawnRows;
+    private int[] _drawnCols;
+    private int _drawnCount;
+    // whether a piece has spawned or moved since the piece was last drawn
+    private boolean _pieceChanged;
+
+    /**
+     * Takes the game pane to add the Canvas to, the Game to draw and the part
+     * of its board to show, and draws the view around the first piece.
+     */
+    public CanvasRenderer(Pane gamePane, Game game, Viewport viewport) {
+        _game = game;
+        _viewport = viewport;
+
+        Canvas canvas = new Canvas(_viewport.getCols() * Constants.SQUARE_WIDTH, _viewport.getRows() * Constants.SQUARE_WIDTH);
+        gamePane.getChildren().add(canvas);
+        _graphics = canvas.getGraphicsContext2D();
+
+        _drawnRows = new int[2 * Shapes.SQUARES];
+        _drawnCols = new int[2 * Shapes.SQUARES];
+
+        _viewport.follow(_game.getPiece());
+        this.drawView();
+        this.drawPiece();
+    }
+
+    /**
+     * Redraws the cells the piece and its ghost covered and draws them where
+     * they are now, or the whole view if it has scrolled to follow the piece.
+     * Does nothing if the Game has not told of a piece spawning or moving
+     * since it was drawn.
+     */
+    @Override
+    public void update() {
+        if (!_pieceChanged) {
+            return;
+        }
+        _pieceChanged = false;
+        Piece piece = _game.getPiece();
+
+        if (_viewport.follow(piece)) {
+            _drawnCount = 0;
+            this.drawView();
+        }
+        else {
+            this.erasePiece();
+        }
+        if (!_game.isGameOver()) {
+            this.drawPiece();
+        }
+    }
+
+    /**
+     * Marks the piece to be drawn by the next update.
+     */
+    @Override
+    public void pieceSpawned(Piece piece) {
+        _pieceChanged = true;
+    }
+
+    /**
+     * Marks the piece to be drawn by the next update.
+     */
+    @Override
+    public void pieceMoved(Piece piece) {
+        _pieceChanged = true;
+    }
+
+    /**
+     * Erases the piece and its ghost where they were last drawn and draws the
+     * cells of the board where the piece locked.
+     */
+    @Override
+    public void pieceLocked(Piece piece) {
+        this.erasePiece();
+        for (int i = 0; i < piece.size(); i++) {
+            this.drawCell(piece.getRow(i), piece.getCol(i));
+        }
+    }
+
+    /**
+     * Redraws the rows in the view from where the top of the stack was before
+     * the clear down to the lowest cleared row. Rows below it have not changed.
+     */
+    @Override
+    public void linesCleared(int[] rows, int count) {
+        Board board = _game.getBoard();
+        int top = Math.max(_viewport.getTop(), board.getStackTop() - count);
+        int bottom = Math.min(_viewport.getTop() + _viewport.getRows() - 1, rows[count - 1]);
+        for (int i = top; i <= bottom; i++) {
+            this.drawRow(i);
+        }
+    }
+
+    /**
+     * Redraws the view, since every row of the stack has moved up. The next
+     * piece is drawn by the next update.
+     */
+    @Override
+    public void garbageAdded(int rows) {
+        _drawnCount = 0;
+        this.drawView();
+    }
+
+    /**
+     * Redraws the view around the piece and the piece as they are now.
+     */
+    @Override
+    public void gameRestored() {
+        _drawnCount = 0;
+        _viewport.follow(_game.getPiece());
+        this.drawView();
+        _pieceChanged = false;
+        if (!_game.isGameOver()) {
+            this.drawPiece();
+        }
+    }
+
+    /**
+     * Draws the ghost of the current piece, then the piece over it, and keeps
+     * the cells they cover so they can be erased when the piece moves.
+     */
+    private void drawPiece() {
+        Piece piece = _game.getPiece();
+        Color color = Palette.ofPiece(piece.getType());
+        int ghostDrop = piece.getGhostY() - piece.getY();
+
+        _drawnCount = 0;
+        _graphics.setGlobalAlpha(Constants.GHOST_OPACITY);
+        for (int i = 0; i < piece.size(); i++) {
+            this.drawSquare(piece.getRow(i) + ghostDrop, piece.getCol(i), color);
+        }
+        _graphics.setGlobalAlpha(1);
+        for (int i = 0; i < piece.size(); i++) {
+            this.drawSquare(piece.getRow(i), piece.getCol(i), color);
+            _drawnRows[_drawnCount] = piece.getRow(i);
+            _drawnCols[_drawnCount++] = piece.getCol(i);
+            _drawnRows[_drawnCount] = piece.getRow(i) + ghostDrop;
+            _drawnCols[_drawnCount++] = piece.getCol(i);
+        }
+    }
+
+    /**
+     * Draws the board back over every cell the piece and its ghost covered when
+     * they were last drawn.
+     */
+    private void erasePiece() {
+        for (int i = 0; i < _drawnCount; i++) {
+            this.drawCell(_drawnRows[i], _drawnCols[i]);
+        }
+        _drawnCount = 0;
+    }
+
+    /**
+     * Draws every row in the view as it is on the board.
+     */
+    private void drawView() {
+        for (int i = _viewport.getTop(); i < _viewport.getTop() + _viewport.getRows(); i++) {
+            this.drawRow(i);
+        }
+    }
+
+    /**
+     * Draws every cell of the row in the view as it is on the board.
+     */
+    private void drawRow(int row) {
+        for (int j = _viewport.getLeft(); j < _viewport.getLeft() + _viewport.getCols(); j++) {
+            this.drawCell(row, j);
+        }
+    }
+
+    /**
+     * Draws the cell as it is on the board, either a square in the color of
+     * what fills it or the background. Cells outside the view are skipped.
+     */
+    private void drawCell(int row, int col) {
+        if (!_viewport.contains(row, col)) {
+            return;
+        }
+        byte cell = _game.getBoard().get(row, col);
+        if (cell == Board.EMPTY) {
+            _graphics.setFill(Palette.BACKGROUND);
+            _graphics.fillRect((col - _viewport.getLeft()) * Constants.SQUARE_WIDTH,
+                    (row - _viewport.getTop()) * Constants.SQUARE_WIDTH, Constants.SQUARE_WIDTH, Constants.SQUARE_WIDTH);
+        }
+        else {
+            this.drawSquare(row, col, Palette.ofCell(cell));
+        }
+    }
+
+    /**
+     * Draws a square in the cell the same way a Square looks, filled with the
+     * color and with the stroke inside its edges. Cells outside the view are
+     * skipped.
+     */
+    private void drawSquare(int row, int col, Color color) {
+        if (!_viewport.contains(row, col)) {
+            return;
+        }
+        double x = (col - _viewport.getLeft()) * Constants.SQUARE_WIDTH;
+        double y = (row - _viewport.getTop()) * Constants.SQUARE_WIDTH;
+        _graphics.setFill(color);
+        _graphics.fillRect(x, y, Constants.SQUARE_WIDTH, Constants.SQUARE_WIDTH);
+        _graphics.setStroke(Palette.STROKE);
+        _graphics.strokeRect(x + 0.5, y + 0.5, Constants.SQUARE_WIDTH - 1, Constants.SQUARE_WIDTH - 1);
+    }
+}
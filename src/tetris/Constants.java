@@ -10,14 +10,38 @@ public class Constants {
     public static final int SQUARE_WIDTH = 30;
     public static final int BOARD_ROWS = 20;
     public static final int BOARD_COLS = 10;
+    // smallest board every piece fits on in every orientation
+    public static final int MIN_BOARD_ROWS = 4;
+    public static final int MIN_BOARD_COLS = 3;
+    // most rows and columns of the board shown at once, larger boards scroll
+    public static final int VIEW_ROWS = 20;
+    public static final int VIEW_COLS = 20;
+    // rows kept visible above and below the falling piece when the view scrolls
+    public static final int VIEW_MARGIN = 4;
     // square thickness of the border
     public static final int BORDER = 1;
     public static final int BOTTOM_PANE_HEIGHT = 25;
 
-    public static final double DURATION = 0.5;
+    // game steps per second, each one tick of the Game
+    public static final int FRAME_RATE = 60;
+    // gravity of one row per tick, the unit of Game.setGravity
+    public static final int GRAVITY_ONE = 1 << 16;
+    // frames a sideways key is held before it repeats, and frames between repeats
+    public static final int DAS_FRAMES = 10;
+    public static final int ARR_FRAMES = 2;
+    // frames between repeated soft drops while the down key is held
+    public static final int SOFT_DROP_FRAMES = 2;
+    // frames a piece can rest on the stack before it locks
+    public static final int LOCK_DELAY_FRAMES = 30;
 
-    public static final int SCENE_WIDTH = SQUARE_WIDTH * (BOARD_COLS + 2 * BORDER);
-    public static final int SCENE_HEIGHT = SQUARE_WIDTH * (BOARD_ROWS + 2 * BORDER) + BOTTOM_PANE_HEIGHT;
+    // gravity of each level from level 1, in 1/GRAVITY_ONE rows per frame, from
+    // the guideline curve of (0.8 - (level - 1) * 0.007)^(level - 1) seconds a
+    // row up to 20G, which drops pieces straight to the stack. Levels past the
+    // end of the table stay at 20G.
+    public static final int[] LEVEL_GRAVITY = { 1092, 1377, 1768, 2311, 3075, 4169, 5759, 8107, 11634, 17026,
+            25416, 38709, 60169, 95483, 154742, 256187, 433425, 749597, 20 * GRAVITY_ONE };
+    // lines cleared to go up a level
+    public static final int LINES_PER_LEVEL = 10;
 
     // coordinates for squares in each tetris piece
     public static final int[][] I_PIECE_COORDS = { {0, 0}, {0, 1}, {0, 2}, {0, 3} };
@@ -28,10 +52,35 @@ public class Constants {
     public static final int[][] S_PIECE_COORDS = { {-1, 1}, {0, 1}, {0, 0}, {1, 0} };
     public static final int[][] Z_PIECE_COORDS = { {-1, 0}, {0, 0}, {0, 1}, {1, 1} };
 
-    // location of the first square of piece, {0, 0} in the piece coords
-    public static final int PIECE_ORIGIN_X = 6;
+    // all 7 configurations, indexed by piece type
+    public static final int[][][] PIECE_COORDS = { I_PIECE_COORDS, T_PIECE_COORDS, J_PIECE_COORDS,
+            L_PIECE_COORDS, O_PIECE_COORDS, S_PIECE_COORDS, Z_PIECE_COORDS };
+    public static final int NUM_PIECE_TYPES = PIECE_COORDS.length;
+
+    // points for clearing 0 to 4 rows with one piece, times the level
+    public static final int[] LINE_SCORES = { 0, 100, 300, 500, 800 };
+    // garbage rows sent to the opponent for clearing 0 to 4 rows with one piece
+    public static final int[] GARBAGE_LINES = { 0, 0, 1, 2, 4 };
+    // points for every row a piece is soft dropped or hard dropped
+    public static final int SOFT_DROP_SCORE = 1;
+    public static final int HARD_DROP_SCORE = 2;
+
+    // number of upcoming pieces kept in the preview queue
+    public static final int PREVIEW_SIZE = 5;
+
+    // number of search results the Bot's transposition table holds
+    public static final int TRANSPOSITION_ENTRIES = 1 << 18;
+
+    // row of the first square of piece, {0, 0} in the piece coords, which
+    // spawns in the middle column given by Board.getSpawnX()
     public static final int PIECE_ORIGIN_Y = 1;
 
-    public static final int GAME_OVER_X = SCENE_WIDTH / 2 - 50;
+    // opacity of the ghost showing where the falling piece will land
+    public static final double GHOST_OPACITY = 0.3;
+
+    // distance of the game over text left of the middle of the board
+    public static final int GAME_OVER_OFFSET = 50;
     public static final int GAME_OVER_FONT = 24;
+    // distance of the level and score text from the top of the game pane
+    public static final int STATUS_Y = 6;
 }
@@ -0,0 +1,261 @@
+package tetris;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a table written by a DatasetWriter. Each block is memory mapped when it
+ * is read, so files far bigger than the heap can be read and only the columns
+ * asked for are inflated. Reading a column of a block fills an int array with
+ * its values, which can be reused from block to block.
+ *
+ * Run with java -cp tetris.jar tetris.DatasetReader file... to print the number
+ * of rows and the smallest, mean and largest value of every column.
+ */
+public class DatasetReader {
+    private FileChannel _channel;
+    private String[] _columns;
+    private int _blockRows;
+    private long[] _offsets;
+    private long _rows;
+    private long _dataEnd;
+    private int _mappedBlock;
+    private MappedByteBuffer _mapped;
+    private byte[] _deflated;
+    private byte[] _encoded;
+    private Inflater _inflater;
+
+    /**
+     * Opens the file and reads its header and block offsets.
+     */
+    public DatasetReader(Path path) throws IOException {
+        _channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = _channel.size();
+            if (size < 11 + DatasetWriter.TRAILER) {
+                throw new IOException(path + " is not a dataset");
+            }
+            ByteBuffer trailer = _channel.map(FileChannel.MapMode.READ_ONLY, size - DatasetWriter.TRAILER,
+                    DatasetWriter.TRAILER);
+            int blocks = trailer.getInt();
+            _rows = trailer.getLong();
+            _dataEnd = trailer.getLong();
+            if (trailer.getInt() != DatasetWriter.MAGIC || blocks < 0
+                    || _dataEnd + 8L * blocks != size - DatasetWriter.TRAILER) {
+                throw new IOException(path + " is not a dataset, or was not closed");
+            }
+            ByteBuffer offsets = _channel.map(FileChannel.MapMode.READ_ONLY, _dataEnd, 8L * blocks);
+            _offsets = new long[blocks];
+            for (int i = 0; i < blocks; i++) {
+                _offsets[i] = offsets.getLong();
+            }
+
+            ByteBuffer header = _channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    blocks > 0 ? _offsets[0] : _dataEnd);
+            if (header.getInt() != DatasetWriter.MAGIC) {
+                throw new IOException(path + " is not a dataset");
+            }
+            byte version = header.get();
+            if (version != DatasetWriter.VERSION) {
+                throw new IOException(path + " is dataset version " + version + ", expected " + DatasetWriter.VERSION);
+            }
+            _blockRows = header.getInt();
+            _columns = new String[header.getShort()];
+            for (int c = 0; c < _columns.length; c++) {
+                byte[] name = new byte[header.getShort()];
+                header.get(name);
+                _columns[c] = new String(name, StandardCharsets.UTF_8);
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            _channel.close();
+            throw e;
+        }
+
+        _mappedBlock = -1;
+        _encoded = new byte[_blockRows * 5];
+        _deflated = new byte[_encoded.length];
+        _inflater = new Inflater();
+    }
+
+    /**
+     * Returns the names of the columns.
+     */
+    public String[] getColumns() {
+        return _columns.clone();
+    }
+
+    /**
+     * Returns the index of the column with the name, or -1 if there is none.
+     */
+    public int indexOf(String column) {
+        for (int c = 0; c < _columns.length; c++) {
+            if (_columns[c].equals(column)) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of rows in the file.
+     */
+    public long getRowCount() {
+        return _rows;
+    }
+
+    /**
+     * Returns the number of blocks in the file.
+     */
+    public int getBlockCount() {
+        return _offsets.length;
+    }
+
+    /**
+     * Returns the most rows a block can hold, the size of array readColumn
+     * needs.
+     */
+    public int getBlockRows() {
+        return _blockRows;
+    }
+
+    /**
+     * Fills the array with the values of one column in one block and returns
+     * how many rows the block has.
+     */
+    public int readColumn(int block, int column, int[] values) throws IOException {
+        ByteBuffer data = this.map(block);
+        int rows = data.getInt(0);
+        int at = 4 + 8 * _columns.length;
+        for (int c = 0; c < column; c++) {
+            at += data.getInt(4 + 8 * c + 4);
+        }
+        int encodedLength = data.getInt(4 + 8 * column);
+        int deflatedLength = data.getInt(4 + 8 * column + 4);
+        if (rows > _blockRows || encodedLength > _encoded.length || deflatedLength > data.capacity() - at) {
+            throw new IOException("Block " + block + " is damaged");
+        }
+
+        if (deflatedLength > _deflated.length) {
+            _deflated = new byte[deflatedLength];
+        }
+        ByteBuffer slice = data.duplicate();
+        slice.position(at);
+        slice.get(_deflated, 0, deflatedLength);
+        _inflater.reset();
+        _inflater.setInput(_deflated, 0, deflatedLength);
+        try {
+            int inflated = 0;
+            while (inflated < encodedLength && !_inflater.finished()) {
+                int n = _inflater.inflate(_encoded, inflated, encodedLength - inflated);
+                if (n == 0 && (_inflater.needsInput() || _inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != encodedLength) {
+                throw new IOException("Block " + block + " is damaged");
+            }
+        }
+        catch (DataFormatException e) {
+            throw new IOException("Block " + block + " is damaged", e);
+        }
+
+        this.decode(encodedLength, values, rows);
+        return rows;
+    }
+
+    /**
+     * Closes the file. The mapped blocks are let go when they are collected.
+     */
+    public void close() throws IOException {
+        _mapped = null;
+        _inflater.end();
+        _channel.close();
+    }
+
+    /**
+     * Returns the block mapped into memory, mapping it if it is not the one
+     * mapped last.
+     */
+    private ByteBuffer map(int block) throws IOException {
+        if (block != _mappedBlock) {
+            long end = block + 1 < _offsets.length ? _offsets[block + 1] : _dataEnd;
+            _mapped = _channel.map(FileChannel.MapMode.READ_ONLY, _offsets[block], end - _offsets[block]);
+            _mappedBlock = block;
+        }
+        return _mapped;
+    }
+
+    /**
+     * Turns the zigzag varints of differences in the encoding buffer back into
+     * values.
+     */
+    private void decode(int length, int[] values, int rows) throws IOException {
+        int at = 0;
+        int last = 0;
+        for (int i = 0; i < rows; i++) {
+            int zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (at == length) {
+                    throw new IOException("Column ends early");
+                }
+                b = _encoded[at++];
+                zigzag |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            last += zigzag >>> 1 ^ -(zigzag & 1);
+            values[i] = last;
+        }
+    }
+
+    /**
+     * Prints the number of rows of every file and the smallest, mean and
+     * largest value of each of its columns, with how fast it was read.
+     */
+    public static void main(String[] argv) throws IOException {
+        for (String file: argv) {
+            long start = System.nanoTime();
+            DatasetReader reader = new DatasetReader(Paths.get(file));
+            String[] columns = reader.getColumns();
+            int[] values = new int[reader.getBlockRows()];
+            long[] min = new long[columns.length];
+            long[] max = new long[columns.length];
+            long[] sum = new long[columns.length];
+            for (int c = 0; c < columns.length; c++) {
+                min[c] = Long.MAX_VALUE;
+                max[c] = Long.MIN_VALUE;
+            }
+            for (int b = 0; b < reader.getBlockCount(); b++) {
+                for (int c = 0; c < columns.length; c++) {
+                    int rows = reader.readColumn(b, c, values);
+                    for (int i = 0; i < rows; i++) {
+                        min[c] = Math.min(min[c], values[i]);
+                        max[c] = Math.max(max[c], values[i]);
+                        sum[c] += values[i];
+                    }
+                }
+            }
+            long rows = reader.getRowCount();
+            reader.close();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("%s: %d rows in %d blocks, read in %.3f s (%.0f rows/s)%n", file, rows,
+                    reader.getBlockCount(), seconds, rows / Math.max(seconds, 1e-9));
+            for (int c = 0; c < columns.length && rows > 0; c++) {
+                System.out.printf("%-12s min %d, mean %.2f, max %d%n", columns[c], min[c], (double) sum[c] / rows,
+                        max[c]);
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package tetris;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a table of int columns to a file a block of rows at a time, so runs of
+ * any length can be written while holding only one block in memory. Each block
+ * stores its columns one after another, each column as the differences between
+ * neighbouring values in zigzag varints and then deflated, so columns that
+ * barely change, such as the game and piece numbers, take almost nothing. A
+ * DatasetReader maps the file and reads back only the columns it needs.
+ *
+ * The file is the int MAGIC, a version byte, the most rows in a block as an
+ * int and the number of columns as a short followed by each column's name as
+ * a short length and UTF-8 bytes. Then come the blocks, each the number of rows
+ * as an int, the encoded and deflated length of every column as two ints, and
+ * the deflated columns. The file ends with the offset of every block as a
+ * long, the number of blocks as an int, the total number of rows as a long and
+ * the offset of the block offsets as a long, then MAGIC again.
+ */
+public class DatasetWriter {
+    public static final int MAGIC = 0x54445331;
+    public static final byte VERSION = 1;
+    public static final int BLOCK_ROWS = 16384;
+    // bytes at the end of the file after the block offsets
+    public static final int TRAILER = 24;
+
+    // most bytes a varint of an int takes
+    private static final int VARINT_BYTES = 5;
+
+    private FileChannel _channel;
+    private String[] _columns;
+    private int[][] _values;
+    private int _rows;
+    private long _totalRows;
+    private byte[] _encoded;
+    private byte[] _deflated;
+    private int[] _encodedLengths;
+    private int[] _deflatedLengths;
+    private ByteBuffer _buffer;
+    private Deflater _deflater;
+    private long[] _offsets;
+    private int _blocks;
+    private long _position;
+    private boolean _closed;
+
+    /**
+     * Creates the file, replacing any file already at the path, and writes the
+     * header with the names of the columns.
+     */
+    public DatasetWriter(Path path, String[] columns) throws IOException {
+        _columns = columns.clone();
+        _values = new int[columns.length][BLOCK_ROWS];
+        _encoded = new byte[BLOCK_ROWS * VARINT_BYTES];
+        _deflated = new byte[_encoded.length];
+        _encodedLengths = new int[columns.length];
+        _deflatedLengths = new int[columns.length];
+        _buffer = ByteBuffer.allocateDirect(8192);
+        _deflater = new Deflater(Deflater.BEST_SPEED);
+        _offsets = new long[16];
+        _channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        _buffer.putInt(MAGIC);
+        _buffer.put(VERSION);
+        _buffer.putInt(BLOCK_ROWS);
+        _buffer.putShort((short) columns.length);
+        for (String column: columns) {
+            byte[] name = column.getBytes(StandardCharsets.UTF_8);
+            this.ensureRoom(2 + name.length);
+            _buffer.putShort((short) name.length);
+            _buffer.put(name);
+        }
+    }
+
+    /**
+     * Returns the names of the columns.
+     */
+    public String[] getColumns() {
+        return _columns.clone();
+    }
+
+    /**
+     * Adds rows to the table. Takes the values row after row, a value for
+     * every column in each, and how many rows there are. Writes out a block
+     * every BLOCK_ROWS rows. Safe to call from many threads at once, and the
+     * rows from one call are kept together in the order they were given.
+     */
+    public synchronized void append(int[] values, int rows) throws IOException {
+        if (_closed) {
+            throw new IOException("Dataset is already closed");
+        }
+        int columns = _columns.length;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                _values[c][_rows] = values[r * columns + c];
+            }
+            _rows++;
+            if (_rows == BLOCK_ROWS) {
+                this.writeBlock();
+            }
+        }
+    }
+
+    /**
+     * Returns how many rows have been added.
+     */
+    public synchronized long getRowCount() {
+        return _totalRows + _rows;
+    }
+
+    /**
+     * Writes out the last block and the block offsets and closes the file.
+     * Does nothing if it is already closed.
+     */
+    public synchronized void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        if (_rows > 0) {
+            this.writeBlock();
+        }
+
+        long offsetsStart = _position + _buffer.position();
+        for (int i = 0; i < _blocks; i++) {
+            this.ensureRoom(8);
+            _buffer.putLong(_offsets[i]);
+        }
+        this.ensureRoom(TRAILER);
+        _buffer.putInt(_blocks);
+        _buffer.putLong(_totalRows);
+        _buffer.putLong(offsetsStart);
+        _buffer.putInt(MAGIC);
+        this.flush();
+        _channel.close();
+        _deflater.end();
+        _closed = true;
+    }
+
+    /**
+     * Encodes and deflates every column of the rows held and writes them out
+     * as a block, then starts a new block. The deflated columns are put one
+     * after another in a buffer first, so their lengths can be written ahead
+     * of them.
+     */
+    private void writeBlock() throws IOException {
+        if (_blocks == _offsets.length) {
+            _offsets = Arrays.copyOf(_offsets, 2 * _blocks);
+        }
+        _offsets[_blocks++] = _position + _buffer.position();
+
+        int columns = _columns.length;
+        int length = 0;
+        for (int c = 0; c < columns; c++) {
+            _encodedLengths[c] = this.encode(_values[c], _rows);
+            _deflater.reset();
+            _deflater.setInput(_encoded, 0, _encodedLengths[c]);
+            _deflater.finish();
+            int start = length;
+            while (!_deflater.finished()) {
+                if (length == _deflated.length) {
+                    _deflated = Arrays.copyOf(_deflated, 2 * _deflated.length);
+                }
+                length += _deflater.deflate(_deflated, length, _deflated.length - length);
+            }
+            _deflatedLengths[c] = length - start;
+        }
+
+        this.ensureRoom(4 + 8 * columns);
+        _buffer.putInt(_rows);
+        for (int c = 0; c < columns; c++) {
+            _buffer.putInt(_encodedLengths[c]);
+            _buffer.putInt(_deflatedLengths[c]);
+        }
+        this.writeBytes(_deflated, length);
+
+        _totalRows += _rows;
+        _rows = 0;
+    }
+
+    /**
+     * Writes the values as zigzag varints of the difference from the value
+     * before, into the encoding buffer. Returns the number of bytes written.
+     */
+    private int encode(int[] values, int rows) {
+        int length = 0;
+        int last = 0;
+        for (int i = 0; i < rows; i++) {
+            int delta = values[i] - last;
+            last = values[i];
+            int zigzag = delta << 1 ^ delta >> 31;
+            while ((zigzag & ~0x7f) != 0) {
+                _encoded[length++] = (byte) (zigzag & 0x7f | 0x80);
+                zigzag >>>= 7;
+            }
+            _encoded[length++] = (byte) zigzag;
+        }
+        return length;
+    }
+
+    /**
+     * Writes bytes to the file through the buffer.
+     */
+    private void writeBytes(byte[] bytes, int length) throws IOException {
+        int written = 0;
+        while (written < length) {
+            this.ensureRoom(1);
+            int chunk = Math.min(length - written, _buffer.remaining());
+            _buffer.put(bytes, written, chunk);
+            written += chunk;
+        }
+    }
+
+    /**
+     * Writes out the buffer first if it has less room than the bytes given.
+     */
+    private void ensureRoom(int bytes) throws IOException {
+        if (_buffer.remaining() < bytes) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Writes everything in the buffer out to the file and empties it.
+     */
+    private void flush() throws IOException {
+        _buffer.flip();
+        while (_buffer.hasRemaining()) {
+            _position += _channel.write(_buffer);
+        }
+        _buffer.clear();
+    }
+}
@@ -0,0 +1,85 @@
+package tetris;
+
+/**
+ * Measurements of the shape of the stack on a board, used to judge how good a
+ * board is. Heights count filled rows up from the bottom of the playable space,
+ * so an empty column has a height of 0.
+ */
+public final class Features {
+
+    private Features() {
+    }
+
+    /**
+     * Returns the height of the column, from the bottom of the playable space to
+     * its highest filled cell.
+     */
+    public static int columnHeight(Board board, int col) {
+        return board.getHeight() - Constants.BORDER - board.getTop(col);
+    }
+
+    /**
+     * Returns the sum of the heights of every column.
+     */
+    public static int aggregateHeight(Board board) {
+        int total = 0;
+        for (int j = Constants.BORDER; j < board.getWidth() - Constants.BORDER; j++) {
+            total += columnHeight(board, j);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the height of the highest column.
+     */
+    public static int maxHeight(Board board) {
+        return board.getHeight() - Constants.BORDER - board.getStackTop();
+    }
+
+    /**
+     * Returns the sum of the differences in height between each pair of
+     * neighbouring columns.
+     */
+    public static int bumpiness(Board board) {
+        int total = 0;
+        for (int j = Constants.BORDER; j < board.getWidth() - Constants.BORDER - 1; j++) {
+            total += Math.abs(columnHeight(board, j) - columnHeight(board, j + 1));
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of empty cells that have a filled cell somewhere above
+     * them in the same column.
+     */
+    public static int holes(Board board) {
+        int holes = 0;
+        int bottom = board.getHeight() - Constants.BORDER;
+        for (int j = Constants.BORDER; j < board.getWidth() - Constants.BORDER; j++) {
+            for (int i = board.getTop(j) + 1; i < bottom; i++) {
+                if (!board.isFilled(i, j)) {
+                    holes++;
+                }
+            }
+        }
+        return holes;
+    }
+
+    /**
+     * Returns the total depth of wells, counting for every column how far it is
+     * below both of its neighbours, with the border counting as a full column.
+     */
+    public static int wells(Board board) {
+        int total = 0;
+        int full = board.getHeight() - 2 * Constants.BORDER;
+        for (int j = Constants.BORDER; j < board.getWidth() - Constants.BORDER; j++) {
+            int left = j == Constants.BORDER ? full : columnHeight(board, j - 1);
+            int right = j == board.getWidth() - Constants.BORDER - 1 ? full : columnHeight(board, j + 1);
+            int depth = Math.min(left, right) - columnHeight(board, j);
+            if (depth > 0) {
+                total += depth;
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,623 @@
+package tetris;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The rules of the game without any graphics. Holds the board and the piece that
+ * is currently falling, spawns new pieces, locks pieces that can no longer fall,
+ * clears full rows and decides when the game is over. The game only moves
+ * forward when tick() or input() is called, so it can be driven by the frame
+ * loop in Tetris or run as fast as possible with no display at all. Once a
+ * Game is created, ticks and inputs do not allocate any objects.
+ *
+ * Gravity is measured in 1/Constants.GRAVITY_ONE rows per tick and builds up
+ * from tick to tick, so pieces can fall slower than a row a tick or many rows
+ * in one tick. A piece resting on the stack locks once it has rested for more
+ * ticks than the lock delay. The defaults, one row a tick and no lock delay,
+ * make every tick move the piece down a row or lock it, which is how headless
+ * players and replays drive the game; Tetris sets a gravity and lock delay for
+ * a tick of one frame, or a starting level so that gravity follows the
+ * Constants.LEVEL_GRAVITY curve.
+ *
+ * The level goes up every Constants.LINES_PER_LEVEL lines. Clearing lines
+ * scores Constants.LINE_SCORES times the level, and dropping a piece scores
+ * points for every row it is dropped.
+ *
+ * In a match against other games, clearing rows attacks with
+ * Constants.GARBAGE_LINES rows, which are taken with takeAttack() and given to
+ * an opponent with addGarbage(). Garbage waits until the next piece locks
+ * without clearing anything and then comes in at the bottom of the board.
+ * Rows cleared while garbage is waiting cancel it before any are sent. The
+ * waiting garbage and the attack not yet taken are not part of the state
+ * written by writeState.
+ */
+public class Game {
+    private Board _board;
+    private Piece _currPiece;
+    private ArrayList<GameListener> _listeners;
+    private PieceGenerator _generator;
+    private boolean _gameOver;
+    private int _ticks;
+    private int _piecesPlaced;
+    private int _linesCleared;
+    private long _score;
+    private int _startLevel;
+    private int _level;
+    private boolean _levelGravity;
+    private int _gravity;
+    private int _gravityProgress;
+    private int _lockDelay;
+    private int _lockTicks;
+    // board column of the hole in each waiting garbage row, oldest first
+    private int[] _garbageHoles;
+    private int _garbageStart;
+    private int _garbageCount;
+    private int _attack;
+
+    /**
+     * Creates an empty board and spawns the first piece, with a random seed so
+     * pieces come in a different order every game.
+     */
+    public Game() {
+        this(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Creates an empty board and spawns the first piece. Games created with the
+     * same seed get the same pieces in the same order.
+     */
+    public Game(long seed) {
+        this(seed, Constants.BOARD_ROWS, Constants.BOARD_COLS);
+    }
+
+    /**
+     * Creates an empty board with the number of playable rows and columns and
+     * spawns the first piece in its middle column.
+     */
+    public Game(long seed, int rows, int cols) {
+        _generator = new PieceGenerator(seed, Constants.PREVIEW_SIZE);
+        _board = new Board(rows, cols);
+        _garbageHoles = new int[rows];
+        _currPiece = new Piece(_board, 0);
+        _listeners = new ArrayList<GameListener>();
+        _gameOver = false;
+        _gravity = Constants.GRAVITY_ONE;
+        _lockDelay = 0;
+        _startLevel = 1;
+        _level = 1;
+        _levelGravity = false;
+        this.spawnPiece();
+    }
+
+    /**
+     * Registers a listener to be told when pieces spawn, move and lock, when
+     * rows are cleared, when a tick ends and when the game ends.
+     */
+    public void addListener(GameListener listener) {
+        _listeners.add(listener);
+    }
+
+    /**
+     * Sets how fast pieces fall, in 1/Constants.GRAVITY_ONE rows per tick, for
+     * the rest of the game whatever the level.
+     */
+    public void setGravity(int gravity) {
+        _gravity = gravity;
+        _levelGravity = false;
+    }
+
+    /**
+     * Starts the game at a level, from 1, and makes gravity follow the level
+     * from then on.
+     */
+    public void setStartLevel(int level) {
+        _startLevel = level;
+        _levelGravity = true;
+        this.updateLevel();
+    }
+
+    /**
+     * Works out the level from the lines cleared, and the gravity for it if
+     * gravity follows the level.
+     */
+    private void updateLevel() {
+        _level = _startLevel + _linesCleared / Constants.LINES_PER_LEVEL;
+        if (_levelGravity) {
+            _gravity = Constants.LEVEL_GRAVITY[Math.min(_level, Constants.LEVEL_GRAVITY.length) - 1];
+        }
+    }
+
+    /**
+     * Queues rows of garbage with a hole in the playable column, from 0, to
+     * come in after the next piece that locks without clearing rows. Garbage
+     * past the height of the board is dropped, since that much would end the
+     * game anyway.
+     */
+    public void addGarbage(int rows, int hole) {
+        for (int i = 0; i < rows && _garbageCount < _garbageHoles.length; i++) {
+            _garbageHoles[(_garbageStart + _garbageCount) % _garbageHoles.length] = Constants.BORDER + hole;
+            _garbageCount++;
+        }
+    }
+
+    /**
+     * Returns how many rows of garbage are waiting to come in.
+     */
+    public int getPendingGarbage() {
+        return _garbageCount;
+    }
+
+    /**
+     * Returns the rows of garbage this game has sent by clearing rows since the
+     * last call, and starts counting again.
+     */
+    public int takeAttack() {
+        int attack = _attack;
+        _attack = 0;
+        return attack;
+    }
+
+    /**
+     * Sets how many ticks a piece can rest on the stack before it locks.
+     */
+    public void setLockDelay(int lockDelay) {
+        _lockDelay = lockDelay;
+    }
+
+    /**
+     * Moves the game forward by one tick. A piece resting on the stack counts
+     * towards its lock delay and locks once the delay is used up. Otherwise the
+     * tick's gravity is added up and the piece falls a row for every whole row
+     * of it, stopping when it lands. The piece falls all of its rows at once
+     * using its landing row, so a tick costs the same at any gravity. Tells
+     * the listeners once the tick is done. Does nothing once the game is over.
+     */
+    public void tick() {
+        if (_gameOver) {
+            return;
+        }
+
+        _ticks++;
+        if (_currPiece.getGhostY() == _currPiece.getY()) {
+            _lockTicks++;
+            if (_lockTicks > _lockDelay) {
+                this.lockPiece();
+            }
+        }
+        else {
+            _lockTicks = 0;
+            _gravityProgress += _gravity;
+            int rows = _gravityProgress / Constants.GRAVITY_ONE;
+            if (rows > 0) {
+                _gravityProgress -= rows * Constants.GRAVITY_ONE;
+                int fallen = _currPiece.fall(rows);
+                if (fallen < rows) {
+                    _gravityProgress = 0;
+                }
+                if (fallen > 0) {
+                    this.pieceMoved();
+                }
+            }
+        }
+
+        for (int i = 0; i < _listeners.size(); i++) {
+            _listeners.get(i).ticked(_ticks);
+        }
+    }
+
+    /**
+     * Applies one move to the current piece. Returns whether the piece moved.
+     * A soft drop that cannot move locks the piece when there is no lock delay
+     * and otherwise leaves the piece resting, and a hard drop moves the piece
+     * as far down as it can go and then locks it. Does nothing once the game
+     * is over.
+     */
+    public boolean input(Input input) {
+        if (_gameOver) {
+            return false;
+        }
+
+        boolean moved;
+        switch (input) {
+            case LEFT:
+                moved = _currPiece.moveX(-1);
+                break;
+            case RIGHT:
+                moved = _currPiece.moveX(1);
+                break;
+            case ROTATE:
+                moved = _currPiece.rotate();
+                break;
+            case SOFT_DROP:
+                moved = _currPiece.moveY();
+                if (moved) {
+                    _lockTicks = 0;
+                    _score += Constants.SOFT_DROP_SCORE;
+                }
+                else if (_lockDelay == 0) {
+                    this.lockPiece();
+                }
+                break;
+            default:
+                int rows = _currPiece.drop();
+                _score += Constants.HARD_DROP_SCORE * rows;
+                if (rows > 0) {
+                    this.pieceMoved();
+                }
+                this.lockPiece();
+                return true;
+        }
+        if (moved) {
+            this.pieceMoved();
+        }
+        return moved;
+    }
+
+    /**
+     * Tells the listeners the current piece has moved.
+     */
+    private void pieceMoved() {
+        for (int i = 0; i < _listeners.size(); i++) {
+            _listeners.get(i).pieceMoved(_currPiece);
+        }
+    }
+
+    /**
+     * Adds the current piece to the board, clears any full rows in the rows it
+     * covers and spawns the next piece, telling the listeners about the lock
+     * and the cleared rows. The game ends if a piece has reached the top row.
+     * This is the only place the board changes during play, so it is the only
+     * place the board is checked for full rows and for the end of the game.
+     */
+    private void lockPiece() {
+        _currPiece.lockPiece();
+        _piecesPlaced++;
+        for (int i = 0; i < _listeners.size(); i++) {
+            _listeners.get(i).pieceLocked(_currPiece);
+        }
+
+        long start = Metrics.start();
+        int cleared = _board.clearLines(_currPiece.getTopRow(), _currPiece.getBottomRow());
+        Metrics.recordLineClear(start, cleared);
+        if (cleared > 0) {
+            _score += Constants.LINE_SCORES[cleared] * _level;
+            _linesCleared += cleared;
+            this.updateLevel();
+            for (int i = 0; i < _listeners.size(); i++) {
+                _listeners.get(i).linesCleared(_board.getClearedRows(), cleared);
+            }
+
+            int attack = Constants.GARBAGE_LINES[cleared];
+            int cancelled = Math.min(attack, _garbageCount);
+            _garbageStart = (_garbageStart + cancelled) % _garbageHoles.length;
+            _garbageCount -= cancelled;
+            _attack += attack - cancelled;
+        }
+        else if (_garbageCount > 0) {
+            this.raiseGarbage();
+        }
+
+        if (_gameOver || _board.topRowIsFilled()) {
+            _gameOver = true;
+        }
+        else {
+            this.spawnPiece();
+        }
+        if (_gameOver) {
+            for (int i = 0; i < _listeners.size(); i++) {
+                _listeners.get(i).gameOver();
+            }
+        }
+    }
+
+    /**
+     * Brings every waiting row of garbage in at the bottom of the board and
+     * tells the listeners. The game ends if the stack is pushed past the top.
+     */
+    private void raiseGarbage() {
+        int rows = 0;
+        while (_garbageCount > 0 && !_gameOver) {
+            if (_board.addGarbage(_garbageHoles[_garbageStart])) {
+                rows++;
+            }
+            else {
+                _gameOver = true;
+            }
+            _garbageStart = (_garbageStart + 1) % _garbageHoles.length;
+            _garbageCount--;
+        }
+        for (int i = 0; i < _listeners.size(); i++) {
+            _listeners.get(i).garbageAdded(rows);
+        }
+    }
+
+    /**
+     * Turns the current piece into the next piece from the generator at the top
+     * of the board and tells the listeners. The game ends if there is no room
+     * for it.
+     */
+    private void spawnPiece() {
+        int type = _generator.next();
+        _currPiece.spawn(type);
+        _gravityProgress = 0;
+        _lockTicks = 0;
+
+        if (_currPiece.isBlocked()) {
+            _gameOver = true;
+        }
+        for (int i = 0; i < _listeners.size(); i++) {
+            _listeners.get(i).pieceSpawned(_currPiece);
+        }
+    }
+
+    /**
+     * Writes the whole state of the game to the buffer: the board from the top
+     * of the stack down, two cells to a byte, then the counters, gravity and
+     * lock delay, the current piece and the generator. Listeners are not part
+     * of the state.
+     */
+    public void writeState(ByteBuffer buffer) {
+        int top = _board.getStackTop();
+        int bottom = _board.getHeight() - Constants.BORDER;
+        int right = _board.getWidth() - Constants.BORDER;
+        buffer.putInt(_board.getHeight());
+        buffer.putInt(_board.getWidth());
+        buffer.putInt(top);
+        int pending = -1;
+        for (int i = top; i < bottom; i++) {
+            for (int j = Constants.BORDER; j < right; j++) {
+                if (pending < 0) {
+                    pending = _board.get(i, j);
+                }
+                else {
+                    buffer.put((byte) (pending << 4 | _board.get(i, j)));
+                    pending = -1;
+                }
+            }
+        }
+        if (pending >= 0) {
+            buffer.put((byte) (pending << 4));
+        }
+
+        buffer.put((byte) (_gameOver ? 1 : 0));
+        buffer.putInt(_ticks);
+        buffer.putInt(_piecesPlaced);
+        buffer.putInt(_linesCleared);
+        buffer.putLong(_score);
+        buffer.putInt(_startLevel);
+        buffer.put((byte) (_levelGravity ? 1 : 0));
+        buffer.putInt(_gravity);
+        buffer.putInt(_gravityProgress);
+        buffer.putInt(_lockDelay);
+        buffer.putInt(_lockTicks);
+
+        buffer.put((byte) _currPiece.getType());
+        buffer.put((byte) _currPiece.getOrientation());
+        buffer.putInt(_currPiece.getX());
+        buffer.putInt(_currPiece.getY());
+        _generator.writeState(buffer);
+    }
+
+    /**
+     * Checks that a state written by writeState fits this game, reading a
+     * copy of the buffer so neither the buffer nor the game changes. Throws an
+     * IllegalArgumentException saying what is wrong if the board is another
+     * size or the state holds a cell, piece or queue that cannot be, and a
+     * BufferUnderflowException if the state ends early.
+     */
+    public void checkState(ByteBuffer buffer) {
+        ByteBuffer state = buffer.duplicate();
+        int height = state.getInt();
+        int width = state.getInt();
+        if (height != _board.getHeight() || width != _board.getWidth()) {
+            throw new IllegalArgumentException("Saved board is " + width + "x" + height + ", expected "
+                    + _board.getWidth() + "x" + _board.getHeight());
+        }
+        int top = state.getInt();
+        int bottom = height - Constants.BORDER;
+        if (top < Constants.BORDER || top > bottom) {
+            throw new IllegalArgumentException("Saved stack top " + top + " is outside the board");
+        }
+        int cells = (bottom - top) * (width - 2 * Constants.BORDER);
+        for (int i = 0; i < (cells + 1) / 2; i++) {
+            int pair = state.get() & 0xff;
+            if (!isSavedCell(pair >>> 4) || !isSavedCell(pair & 0xf)) {
+                throw new IllegalArgumentException("Saved board has a cell that is neither a piece nor garbage");
+            }
+        }
+
+        // the counters, gravity and lock delay can take any value
+        state.get();
+        for (int i = 0; i < 3; i++) {
+            state.getInt();
+        }
+        state.getLong();
+        state.getInt();
+        state.get();
+        for (int i = 0; i < 4; i++) {
+            state.getInt();
+        }
+
+        int type = state.get();
+        int orientation = state.get();
+        int x = state.getInt();
+        int y = state.getInt();
+        if (type < 0 || type >= Constants.NUM_PIECE_TYPES || orientation < 0 || orientation >= Shapes.ORIENTATIONS) {
+            throw new IllegalArgumentException("Saved piece has type " + type + " and orientation " + orientation);
+        }
+        int index = Shapes.index(type, orientation) * Shapes.SQUARES;
+        for (int i = 0; i < Shapes.SQUARES; i++) {
+            int row = y + Shapes.DY[index + i];
+            int col = x + Shapes.DX[index + i];
+            if (row < 0 || row >= height || col < 0 || col >= width) {
+                throw new IllegalArgumentException("Saved piece at " + x + ", " + y + " is outside the board");
+            }
+        }
+        _generator.checkState(state);
+    }
+
+    /**
+     * Returns whether a cell of a saved board is empty, a piece or garbage.
+     */
+    private static boolean isSavedCell(int cell) {
+        return cell <= Constants.NUM_PIECE_TYPES || cell == Board.GARBAGE_CELL;
+    }
+
+    /**
+     * Replaces the whole state of the game with one written by writeState for
+     * a board of the same size, forgetting any waiting garbage, then tells the
+     * listeners the game was restored. A state checkState refuses is refused
+     * here with the same exception before anything changes.
+     * Takes time in proportion to the rows of the stack, before and after.
+     */
+    public void readState(ByteBuffer buffer) {
+        this.checkState(buffer);
+        int height = buffer.getInt();
+        int width = buffer.getInt();
+        int top = buffer.getInt();
+        int bottom = height - Constants.BORDER;
+        int right = width - Constants.BORDER;
+        _board.clear();
+        int pending = -1;
+        for (int i = top; i < bottom; i++) {
+            for (int j = Constants.BORDER; j < right; j++) {
+                int cell;
+                if (pending < 0) {
+                    int pair = buffer.get() & 0xff;
+                    cell = pair >>> 4;
+                    pending = pair & 0xf;
+                }
+                else {
+                    cell = pending;
+                    pending = -1;
+                }
+                if (cell != Board.EMPTY) {
+                    _board.fill(i, j, cell - 1);
+                }
+            }
+        }
+
+        _gameOver = buffer.get() != 0;
+        _ticks = buffer.getInt();
+        _piecesPlaced = buffer.getInt();
+        _linesCleared = buffer.getInt();
+        _score = buffer.getLong();
+        _startLevel = buffer.getInt();
+        _levelGravity = buffer.get() != 0;
+        _gravity = buffer.getInt();
+        _gravityProgress = buffer.getInt();
+        _lockDelay = buffer.getInt();
+        _lockTicks = buffer.getInt();
+        _garbageCount = 0;
+        _attack = 0;
+        this.updateLevel();
+
+        int type = buffer.get();
+        int orientation = buffer.get();
+        int x = buffer.getInt();
+        int y = buffer.getInt();
+        _currPiece.setLocation(type, x, y, orientation);
+        _generator.readState(buffer);
+
+        for (int i = 0; i < _listeners.size(); i++) {
+            _listeners.get(i).gameRestored();
+        }
+    }
+
+    /**
+     * Returns the board.
+     */
+    public Board getBoard() {
+        return _board;
+    }
+
+    /**
+     * Returns the generator choosing the pieces, which holds the seed and the
+     * preview of the pieces coming next.
+     */
+    public PieceGenerator getGenerator() {
+        return _generator;
+    }
+
+    /**
+     * Returns the piece that is currently falling.
+     */
+    public Piece getPiece() {
+        return _currPiece;
+    }
+
+    /**
+     * Returns whether the game is over.
+     */
+    public boolean isGameOver() {
+        return _gameOver;
+    }
+
+    /**
+     * Returns the number of steps of gravity the game has been moved forward by.
+     */
+    public int getTicks() {
+        return _ticks;
+    }
+
+    /**
+     * Returns the number of pieces that have locked into place.
+     */
+    public int getPiecesPlaced() {
+        return _piecesPlaced;
+    }
+
+    /**
+     * Returns the total number of rows cleared.
+     */
+    public int getLinesCleared() {
+        return _linesCleared;
+    }
+
+    /**
+     * Returns the level, which starts at the start level and goes up every
+     * Constants.LINES_PER_LEVEL lines.
+     */
+    public int getLevel() {
+        return _level;
+    }
+
+    /**
+     * Returns the level the game started at.
+     */
+    public int getStartLevel() {
+        return _startLevel;
+    }
+
+    /**
+     * Returns whether gravity follows the level rather than being set.
+     */
+    public boolean hasLevelGravity() {
+        return _levelGravity;
+    }
+
+    /**
+     * Returns how fast pieces fall, in 1/Constants.GRAVITY_ONE rows per tick.
+     */
+    public int getGravity() {
+        return _gravity;
+    }
+
+    /**
+     * Returns how many ticks a piece can rest on the stack before it locks.
+     */
+    public int getLockDelay() {
+        return _lockDelay;
+    }
+
+    /**
+     * Returns the score, which goes up with every line clear, more for clearing
+     * several rows at once and at higher levels, and with every row a piece is
+     * dropped.
+     */
+    public long getScore() {
+        return _score;
+    }
+}
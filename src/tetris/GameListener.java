@@ -0,0 +1,71 @@
+package tetris;
+
+/**
+ * Told by a Game when something happens on the board, so that graphics and
+ * anything else following the game can update only what changed instead of
+ * looking over the whole board or the piece after every step. Each method does
+ * nothing unless it is overridden. The Game calls its listeners in the order
+ * they were added, on the thread that ticks it, and a listener must not change
+ * the game while it is being told.
+ */
+public interface GameListener {
+
+    /**
+     * Called when a new piece has come in at the top of the board, including a
+     * piece that has no room and ends the game.
+     */
+    default void pieceSpawned(Piece piece) {
+    }
+
+    /**
+     * Called when the current piece has moved, turned or fallen, whether by an
+     * input or by gravity. A move that is blocked is not told.
+     */
+    default void pieceMoved(Piece piece) {
+    }
+
+    /**
+     * Called when a piece locks into place, before any rows are cleared. The
+     * piece is still at the location where it locked.
+     */
+    default void pieceLocked(Piece piece) {
+    }
+
+    /**
+     * Called once after a piece locks if it completed any rows. Takes the rows
+     * that were removed, from top to bottom and numbered as they were before
+     * the rows above them moved down, and how many entries of the array are
+     * used. The array belongs to the board and is reused by the next clear.
+     */
+    default void linesCleared(int[] rows, int count) {
+    }
+
+    /**
+     * Called when garbage rows sent by an opponent have come in at the bottom of
+     * the board, pushing every row of the stack up. Takes how many rows came in.
+     */
+    default void garbageAdded(int rows) {
+    }
+
+    /**
+     * Called at the end of every tick, after everything that happened in it
+     * has been told. Takes the number of the tick.
+     */
+    default void ticked(int tick) {
+    }
+
+    /**
+     * Called once when the game ends, after the lock, cleared rows or garbage
+     * that ended it have been told.
+     */
+    default void gameOver() {
+    }
+
+    /**
+     * Called when the whole state of the game has been replaced, such as by
+     * restoring a GameState, so anything following it must start over from the
+     * board and piece as they are now.
+     */
+    default void gameRestored() {
+    }
+}
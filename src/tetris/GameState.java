@@ -0,0 +1,158 @@
+package tetris;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * An immutable copy of everything needed to carry on a game: the board, the
+ * current piece, the counters, gravity and lock delay, and the random state,
+ * bag and preview queue of the generator. It is kept as a small array of bytes
+ * rather than objects. The board is stored from the top of the stack down,
+ * two cells to a byte, so the state of a game on a standard board takes 99
+ * bytes when the board is empty and under 200 when it is full.
+ *
+ * Capturing and restoring take time in proportion to the board, so a state can
+ * be forked into any number of independent Games for searching, written to a
+ * file to save a game and read back to resume it, or restored into the Game a
+ * running Tetris is playing.
+ *
+ * The bytes are the int MAGIC and a version byte, then the game as written by
+ * Game.writeState.
+ */
+public class GameState {
+    public static final int MAGIC = 0x54534e50;
+    public static final byte VERSION = 1;
+
+    private byte[] _bytes;
+
+    /**
+     * Takes the bytes of the state, which are not copied.
+     */
+    private GameState(byte[] bytes) {
+        _bytes = bytes;
+    }
+
+    /**
+     * Returns a snapshot of the Game as it is now.
+     */
+    public static GameState capture(Game game) {
+        Board board = game.getBoard();
+        int cells = (board.getHeight() - 2 * Constants.BORDER) * (board.getWidth() - 2 * Constants.BORDER);
+        ByteBuffer buffer = ByteBuffer.allocate(128 + (cells + 1) / 2 + game.getGenerator().getPreviewSize());
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        game.writeState(buffer);
+        return new GameState(Arrays.copyOf(buffer.array(), buffer.position()));
+    }
+
+    /**
+     * Returns the state stored in the bytes, which are copied. Throws an
+     * IOException if they do not start like a state.
+     */
+    public static GameState fromBytes(byte[] bytes) throws IOException {
+        GameState state = new GameState(bytes.clone());
+        state.open();
+        return state;
+    }
+
+    /**
+     * Reads a state saved with write().
+     */
+    public static GameState read(Path path) throws IOException {
+        return fromBytes(Files.readAllBytes(path));
+    }
+
+    /**
+     * Saves the state to a file. The file is written next to the path and then
+     * moved over it, so a save cut short never leaves half a file.
+     */
+    public void write(Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(temporary, _bytes);
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns a copy of the bytes of the state.
+     */
+    public byte[] toBytes() {
+        return _bytes.clone();
+    }
+
+    /**
+     * Returns how many bytes the state takes.
+     */
+    public int size() {
+        return _bytes.length;
+    }
+
+    /**
+     * Returns a new Game in this state, on a board of the saved size, with no
+     * listeners, that plays on independently of any other Game made from it.
+     */
+    public Game toGame() {
+        int height;
+        int width;
+        try {
+            ByteBuffer buffer = this.open();
+            height = buffer.getInt();
+            width = buffer.getInt();
+        }
+        catch (BufferUnderflowException | IOException e) {
+            throw new IllegalArgumentException("Game state is incomplete", e);
+        }
+        // the seed does not matter, the generator is restored with the rest
+        Game game = new Game(0, height - 2 * Constants.BORDER, width - 2 * Constants.BORDER);
+        this.restore(game);
+        return game;
+    }
+
+    /**
+     * Checks that this state fits the Game without changing it. Throws an
+     * IllegalArgumentException saying what is wrong if the Game's board is
+     * another size or the state is damaged.
+     */
+    public void check(Game game) {
+        try {
+            game.checkState(this.open());
+        }
+        catch (BufferUnderflowException | IOException e) {
+            throw new IllegalArgumentException("Game state is incomplete", e);
+        }
+    }
+
+    /**
+     * Puts the Game into this state, or throws an IllegalArgumentException and
+     * leaves the Game as it was if check() refuses it. Its listeners are told
+     * the game was restored so they can redraw everything.
+     */
+    public void restore(Game game) {
+        try {
+            game.readState(this.open());
+        }
+        catch (BufferUnderflowException | IOException e) {
+            throw new IllegalArgumentException("Game state is incomplete", e);
+        }
+    }
+
+    /**
+     * Returns a buffer over the bytes positioned after the header, checking the
+     * header on the way.
+     */
+    private ByteBuffer open() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(_bytes).asReadOnlyBuffer();
+        if (buffer.remaining() < 5 || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a saved game");
+        }
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException("Saved game is version " + version + ", expected " + VERSION);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,178 @@
+package tetris;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how often values, such as times in nanoseconds, fall in each of a
+ * fixed set of buckets. Bucket i holds the values from 2^(i-1) up to 2^i - 1,
+ * so recording a value is a count of leading zeros and an add, and the
+ * histogram never grows. Every bucket is a LongAdder, so many threads can
+ * record at once without locking or fighting over one counter. Percentiles
+ * are read back as the top of the bucket they fall in.
+ */
+public class Histogram {
+    // one bucket for 0 and one for each bit length of a long
+    public static final int BUCKETS = 65;
+
+    private LongAdder[] _buckets;
+    private LongAdder _total;
+    private LongAccumulator _max;
+
+    /**
+     * Creates an empty histogram.
+     */
+    public Histogram() {
+        _buckets = new LongAdder[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            _buckets[i] = new LongAdder();
+        }
+        _total = new LongAdder();
+        _max = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Adds a value. Negative values count as 0.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        _buckets[64 - Long.numberOfLeadingZeros(value)].increment();
+        _total.add(value);
+        _max.accumulate(value);
+    }
+
+    /**
+     * Returns how many values have been recorded.
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += _buckets[i].sum();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the mean of the values recorded, or 0 if there are none.
+     */
+    public double getMean() {
+        long count = this.getCount();
+        return count == 0 ? 0 : (double) _total.sum() / count;
+    }
+
+    /**
+     * Returns the largest value recorded.
+     */
+    public long getMax() {
+        return _max.get();
+    }
+
+    /**
+     * Returns the top of the bucket holding the value that the fraction of
+     * recorded values are at or below, but no more than the largest value.
+     */
+    public long getPercentile(double fraction) {
+        long count = this.getCount();
+        long rank = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += _buckets[i].sum();
+            if (seen >= rank && seen > 0) {
+                long top = i == 0 ? 0 : i == 64 ? Long.MAX_VALUE : (1L << i) - 1;
+                return Math.min(top, this.getMax());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Empties the histogram. Values recorded while it is being emptied may be
+     * kept or lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            _buckets[i].reset();
+        }
+        _total.reset();
+        _max.reset();
+    }
+
+    /**
+     * Returns a copy of the histogram's summary at this moment.
+     */
+    public Summary summarize() {
+        return new Summary(this.getCount(), this.getMean(), this.getPercentile(0.5), this.getPercentile(0.9),
+                this.getPercentile(0.99), this.getMax());
+    }
+
+    /**
+     * The count, mean, 50th, 90th and 99th percentiles and largest value of a
+     * Histogram at one moment. Shown in JMX as a composite value.
+     */
+    public static class Summary {
+        private long _count;
+        private double _mean;
+        private long _p50;
+        private long _p90;
+        private long _p99;
+        private long _max;
+
+        /**
+         * Takes every field of the summary.
+         */
+        @ConstructorProperties({ "count", "mean", "p50", "p90", "p99", "max" })
+        public Summary(long count, double mean, long p50, long p90, long p99, long max) {
+            _count = count;
+            _mean = mean;
+            _p50 = p50;
+            _p90 = p90;
+            _p99 = p99;
+            _max = max;
+        }
+
+        /**
+         * Returns how many values were recorded.
+         */
+        public long getCount() {
+            return _count;
+        }
+
+        /**
+         * Returns the mean of the values.
+         */
+        public double getMean() {
+            return _mean;
+        }
+
+        /**
+         * Returns the 50th percentile.
+         */
+        public long getP50() {
+            return _p50;
+        }
+
+        /**
+         * Returns the 90th percentile.
+         */
+        public long getP90() {
+            return _p90;
+        }
+
+        /**
+         * Returns the 99th percentile.
+         */
+        public long getP99() {
+            return _p99;
+        }
+
+        /**
+         * Returns the largest value.
+         */
+        public long getMax() {
+            return _max;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package tetris;
+
+/**
+ * The moves a player can make on the falling piece. Keyboard input, and anything
+ * else that wants to play the game, is translated into one of these and passed
+ * to the Game so that every kind of player goes through the same rules.
+ */
+public enum Input {
+    LEFT,
+    RIGHT,
+    SOFT_DROP,
+    HARD_DROP,
+    ROTATE
+}
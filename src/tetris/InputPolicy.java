@@ -0,0 +1,49 @@
+package tetris;
+
+/**
+ * Something that plays the game without a keyboard, such as the Bot. Each call
+ * to play() gives the Game the inputs for its current piece through Game.input,
+ * and ends once the piece has locked. A policy belongs to one game at a time so
+ * games can be played in parallel, sharing nothing but the TranspositionTable
+ * bots may be given, which many threads can use at once.
+ */
+public interface InputPolicy {
+
+    /**
+     * Plays the Game's current piece until it locks.
+     */
+    void play(Game game);
+
+    /**
+     * Creates a new policy from a description: "random" for random moves,
+     * "script:" followed by the letters of a ScriptedPolicy script, or "bot:"
+     * followed by how many pieces the Bot looks ahead. Takes a seed for
+     * policies that make random choices. A Bot gets a table of its own.
+     */
+    static InputPolicy create(String description, long seed) {
+        return create(description, seed, null);
+    }
+
+    /**
+     * Creates a new policy as above, with a Bot caching its scores in the
+     * table, so games played one after another or in parallel reuse one table
+     * instead of each making and clearing its own. The table may be null to
+     * give a Bot a table of its own.
+     */
+    static InputPolicy create(String description, long seed, TranspositionTable table) {
+        if (description.equals("random")) {
+            return new RandomPolicy(seed);
+        }
+        else if (description.startsWith("script:")) {
+            return new ScriptedPolicy(description.substring("script:".length()));
+        }
+        else if (description.startsWith("bot:")) {
+            int depth = Integer.parseInt(description.substring("bot:".length()));
+            if (table == null) {
+                return new Bot(new Weights(), depth, null);
+            }
+            return new Bot(new Weights(), depth, null, table);
+        }
+        throw new IllegalArgumentException("Unknown input policy: " + description + " (expected random, script:<moves> or bot:<depth>)");
+    }
+}
@@ -0,0 +1,139 @@
+package tetris;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+/**
+ * Turns key presses and releases into the Inputs applied to a Game on each
+ * step of the frame loop. Presses and releases are queued as they arrive and
+ * drained once per step, so every input lands on a step boundary no matter
+ * when the key event came in. Repeats of held keys are timed in steps instead
+ * of by the operating system's key repeat: a held left or right key moves once
+ * when pressed, again after the delayed auto shift (DAS) and then every auto
+ * repeat rate (ARR) steps, and a held down key soft drops every few steps.
+ * Rotating and hard dropping happen once per press.
+ */
+public class InputQueue {
+    private static final Input[] INPUTS = Input.values();
+
+    private int _das;
+    private int _arr;
+    private int _softDropRepeat;
+    private int _cols;
+    private ArrayDeque<Integer> _events;
+    private boolean[] _held;
+    private Input _shift;
+    private int _shiftFrames;
+    private int _dropFrames;
+
+    /**
+     * Takes the timing of held keys and the size of the board. das is the
+     * steps a sideways key is held before it repeats, at least one so a press
+     * never moves twice on the same step. arr is the steps between repeats, or
+     * 0 to move all the way to the wall at once. softDropRepeat is the steps
+     * between repeated soft drops. cols is the playable columns of the board,
+     * the most moves it can take to reach the wall.
+     */
+    public InputQueue(int das, int arr, int softDropRepeat, int cols) {
+        _das = Math.max(1, das);
+        _cols = cols;
+        _arr = arr;
+        _softDropRepeat = Math.max(1, softDropRepeat);
+        _events = new ArrayDeque<Integer>();
+        _held = new boolean[INPUTS.length];
+    }
+
+    /**
+     * Queues a key press. Presses of a key that is already held, such as the
+     * operating system's key repeat, are ignored when the queue is drained.
+     */
+    public void press(Input input) {
+        _events.add(input.ordinal() << 1 | 1);
+    }
+
+    /**
+     * Queues a key release.
+     */
+    public void release(Input input) {
+        _events.add(input.ordinal() << 1);
+    }
+
+    /**
+     * Forgets every queued event and held key, for when the game is paused and
+     * releases might be missed.
+     */
+    public void clear() {
+        _events.clear();
+        for (int i = 0; i < _held.length; i++) {
+            _held[i] = false;
+        }
+        _shift = null;
+    }
+
+    /**
+     * Drains the events queued since the last step, then repeats held keys
+     * whose time has come, passing every Input to apply in order.
+     */
+    public void step(Consumer<Input> apply) {
+        while (!_events.isEmpty()) {
+            int event = _events.poll();
+            Input input = INPUTS[event >> 1];
+            if ((event & 1) != 0) {
+                this.pressed(input, apply);
+            }
+            else {
+                this.released(input);
+            }
+        }
+
+        if (_shift != null) {
+            if (_shiftFrames >= _das && (_arr == 0 || (_shiftFrames - _das) % _arr == 0)) {
+                int moves = _arr == 0 ? _cols : 1;
+                for (int i = 0; i < moves; i++) {
+                    apply.accept(_shift);
+                }
+            }
+            _shiftFrames++;
+        }
+
+        if (_held[Input.SOFT_DROP.ordinal()]) {
+            if (_dropFrames > 0 && _dropFrames % _softDropRepeat == 0) {
+                apply.accept(Input.SOFT_DROP);
+            }
+            _dropFrames++;
+        }
+    }
+
+    /**
+     * Applies a newly pressed key once and starts timing its repeats. The last
+     * sideways key pressed is the one that repeats.
+     */
+    private void pressed(Input input, Consumer<Input> apply) {
+        if (_held[input.ordinal()]) {
+            return;
+        }
+        _held[input.ordinal()] = true;
+        apply.accept(input);
+
+        if (input == Input.LEFT || input == Input.RIGHT) {
+            _shift = input;
+            _shiftFrames = 0;
+        }
+        else if (input == Input.SOFT_DROP) {
+            _dropFrames = 0;
+        }
+    }
+
+    /**
+     * Stops a released key repeating. If the other sideways key is still held
+     * it takes over, charging its DAS from the start.
+     */
+    private void released(Input input) {
+        _held[input.ordinal()] = false;
+        if (input == _shift) {
+            Input other = input == Input.LEFT ? Input.RIGHT : Input.LEFT;
+            _shift = _held[other.ordinal()] ? other : null;
+            _shiftFrames = 0;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package tetris;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Timings and counts of the game while it runs: tick time, input to render
+ * latency, line clear time, frame time and garbage collection seen per frame,
+ * each kept in a Histogram. Turned on with -Dtetris.metrics=true, which
+ * registers them as an MXBean named tetris:type=Metrics for JConsole or any
+ * other JMX client, and -Dtetris.metrics.csv=<file> also appends a line of
+ * them to a CSV file every -Dtetris.metrics.interval seconds (10 by default).
+ *
+ * Code being timed calls start() and then one of the record methods. ENABLED
+ * is a constant, so when metrics are off the JIT removes these calls and no
+ * clock is read.
+ */
+public class Metrics implements MetricsMXBean {
+    public static final boolean ENABLED = Boolean.getBoolean("tetris.metrics")
+            || System.getProperty("tetris.metrics.csv") != null;
+
+    private static final Metrics INSTANCE = new Metrics();
+    private static final String[] HISTOGRAMS = { "tick", "input", "clear", "frame", "gc" };
+
+    private Histogram _tickTime;
+    private Histogram _inputLatency;
+    private Histogram _lineClearTime;
+    private Histogram _frameTime;
+    private Histogram _gcPause;
+    private LongAdder _inputs;
+    private LongAdder _linesCleared;
+    private List<GarbageCollectorMXBean> _collectors;
+    private long _lastGcMillis;
+
+    static {
+        if (ENABLED) {
+            INSTANCE.register();
+        }
+    }
+
+    /**
+     * Creates the empty histograms and counters.
+     */
+    private Metrics() {
+        _tickTime = new Histogram();
+        _inputLatency = new Histogram();
+        _lineClearTime = new Histogram();
+        _frameTime = new Histogram();
+        _gcPause = new Histogram();
+        _inputs = new LongAdder();
+        _linesCleared = new LongAdder();
+    }
+
+    /**
+     * Returns the metrics of this program.
+     */
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the time to pass to a record method when the timed work is done,
+     * or 0 without reading the clock if metrics are off.
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time of a tick that started at the time passed in.
+     */
+    public static void recordTick(long start) {
+        if (ENABLED) {
+            INSTANCE._tickTime.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the time from a key press at the time passed in to its move
+     * being drawn.
+     */
+    public static void recordInputLatency(long start) {
+        if (ENABLED) {
+            INSTANCE._inputLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the time of a line clear that started at the time passed in and
+     * cleared the number of lines.
+     */
+    public static void recordLineClear(long start, int cleared) {
+        if (ENABLED) {
+            INSTANCE._lineClearTime.record(System.nanoTime() - start);
+            INSTANCE._linesCleared.add(cleared);
+        }
+    }
+
+    /**
+     * Counts an input applied to a game.
+     */
+    public static void recordInput() {
+        if (ENABLED) {
+            INSTANCE._inputs.increment();
+        }
+    }
+
+    /**
+     * Records the time of a frame that started at the time passed in, and the
+     * garbage collection time since the last frame if there was any. Only
+     * called from the JavaFX thread.
+     */
+    public static void recordFrame(long start) {
+        if (ENABLED) {
+            INSTANCE._frameTime.record(System.nanoTime() - start);
+            INSTANCE.observeGc();
+        }
+    }
+
+    /**
+     * Adds up the collection time of every garbage collector and records how
+     * much it went up since the last call.
+     */
+    private void observeGc() {
+        long millis = 0;
+        for (int i = 0; i < _collectors.size(); i++) {
+            millis += Math.max(0, _collectors.get(i).getCollectionTime());
+        }
+        if (millis > _lastGcMillis) {
+            _gcPause.record(TimeUnit.MILLISECONDS.toNanos(millis - _lastGcMillis));
+        }
+        _lastGcMillis = millis;
+    }
+
+    /**
+     * Registers the MXBean and starts writing the CSV file if one was asked for.
+     */
+    private void register() {
+        _collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("tetris:type=Metrics"));
+        }
+        catch (JMException e) {
+            System.err.println("Could not register metrics: " + e.getMessage());
+        }
+
+        String csv = System.getProperty("tetris.metrics.csv");
+        if (csv != null) {
+            long interval = Long.getLong("tetris.metrics.interval", 10);
+            ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-csv");
+                thread.setDaemon(true);
+                return thread;
+            });
+            Path path = Paths.get(csv);
+            dumper.scheduleAtFixedRate(() -> this.dump(path), interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Appends a line of the current metrics to the CSV file, writing the header
+     * first if the file is new. Stops writing if the file cannot be written.
+     */
+    private void dump(Path path) {
+        try {
+            boolean fresh = !Files.exists(path);
+            try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                if (fresh) {
+                    writer.write("time,inputs,lines");
+                    for (String name: HISTOGRAMS) {
+                        writer.write("," + name + "_count," + name + "_mean," + name + "_p50," + name + "_p90,"
+                                + name + "_p99," + name + "_max");
+                    }
+                    writer.newLine();
+                }
+
+                StringBuilder line = new StringBuilder();
+                line.append(System.currentTimeMillis()).append(',').append(this.getInputs()).append(',').append(this.getLinesCleared());
+                Histogram.Summary[] summaries = { this.getTickTime(), this.getInputLatency(), this.getLineClearTime(),
+                        this.getFrameTime(), this.getGcPause() };
+                for (Histogram.Summary summary: summaries) {
+                    line.append(',').append(summary.getCount()).append(',').append(Math.round(summary.getMean()))
+                            .append(',').append(summary.getP50()).append(',').append(summary.getP90())
+                            .append(',').append(summary.getP99()).append(',').append(summary.getMax());
+                }
+                writer.write(line.toString());
+                writer.newLine();
+            }
+        }
+        catch (IOException e) {
+            System.err.println("Could not write metrics: " + e.getMessage());
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public Histogram.Summary getTickTime() {
+        return _tickTime.summarize();
+    }
+
+    @Override
+    public Histogram.Summary getInputLatency() {
+        return _inputLatency.summarize();
+    }
+
+    @Override
+    public Histogram.Summary getLineClearTime() {
+        return _lineClearTime.summarize();
+    }
+
+    @Override
+    public Histogram.Summary getFrameTime() {
+        return _frameTime.summarize();
+    }
+
+    @Override
+    public Histogram.Summary getGcPause() {
+        return _gcPause.summarize();
+    }
+
+    @Override
+    public long getInputs() {
+        return _inputs.sum();
+    }
+
+    @Override
+    public long getLinesCleared() {
+        return _linesCleared.sum();
+    }
+
+    @Override
+    public void reset() {
+        _tickTime.reset();
+        _inputLatency.reset();
+        _lineClearTime.reset();
+        _frameTime.reset();
+        _gcPause.reset();
+        _inputs.reset();
+        _linesCleared.reset();
+    }
+}
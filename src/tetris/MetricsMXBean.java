@@ -0,0 +1,50 @@
+package tetris;
+
+/**
+ * The management interface of Metrics, registered with the platform MBean
+ * server as tetris:type=Metrics when metrics are turned on. Times are in
+ * nanoseconds.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * Returns how long Game.tick took.
+     */
+    Histogram.Summary getTickTime();
+
+    /**
+     * Returns how long it took from a key being pressed to the move being drawn.
+     */
+    Histogram.Summary getInputLatency();
+
+    /**
+     * Returns how long Board.clearLines took after every lock.
+     */
+    Histogram.Summary getLineClearTime();
+
+    /**
+     * Returns how long each pulse of the frame loop took, steps and drawing.
+     */
+    Histogram.Summary getFrameTime();
+
+    /**
+     * Returns the garbage collection time seen between frames, for the frames
+     * that had any.
+     */
+    Histogram.Summary getGcPause();
+
+    /**
+     * Returns how many inputs were applied to games.
+     */
+    long getInputs();
+
+    /**
+     * Returns how many lines were cleared.
+     */
+    long getLinesCleared();
+
+    /**
+     * Empties every histogram and counter.
+     */
+    void reset();
+}
@@ -0,0 +1,189 @@
+package tetris;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A copy of another process's game built up from the frames written by a
+ * BoardDelta, for clients and spectators that only see the game over the
+ * network. Keeps which cells are filled, the current piece, the waiting
+ * garbage, whether the game is over and the rows the last frame said were
+ * cleared, but not what filled each cell, so it takes one bit per cell. Rows
+ * are numbered the same as on the Board, border included.
+ */
+public class MirrorBoard {
+    private int _height;
+    private int _cols;
+    private int _rowBytes;
+    private byte[] _cells;
+    private int _stackTop;
+    private int _tick;
+    private boolean _gameOver;
+    private int _pieceType;
+    private int _pieceOrientation;
+    private int _pieceX;
+    private int _pieceY;
+    private int _pendingGarbage;
+    private int[] _cleared;
+    private int _clearedCount;
+
+    /**
+     * Creates an empty board with the number of playable rows and columns.
+     */
+    public MirrorBoard(int rows, int cols) {
+        _height = rows + 2 * Constants.BORDER;
+        _cols = cols;
+        _rowBytes = (cols + 7) / 8;
+        _cells = new byte[_height * _rowBytes];
+        _stackTop = _height - Constants.BORDER;
+        _cleared = new int[BoardDelta.MAX_CLEARED];
+    }
+
+    /**
+     * Brings the board up to date with a frame. Rows the stack no longer
+     * reaches are emptied, all of them for a keyframe, then the rows in the
+     * frame are copied in. Throws an IllegalArgumentException if the frame
+     * does not fit the board.
+     */
+    public void apply(ByteBuffer frame) {
+        _tick = frame.getInt();
+        int flags = frame.get();
+        _pieceType = frame.get();
+        _pieceOrientation = frame.get();
+        _pieceX = frame.getInt();
+        _pieceY = frame.getInt();
+        _pendingGarbage = frame.getInt();
+        int stackTop = frame.getInt();
+        int first = frame.getInt();
+        int count = frame.getInt();
+        int cleared = frame.get() & 0xff;
+        if (stackTop < 0 || stackTop > _height - Constants.BORDER || first < 0 || count < 0
+                || count > _height - first || cleared > BoardDelta.MAX_CLEARED
+                || frame.remaining() < 4 * cleared + count * _rowBytes) {
+            throw new IllegalArgumentException("Frame does not fit a board of " + _height + " rows");
+        }
+        for (int i = 0; i < cleared; i++) {
+            _cleared[i] = frame.getInt();
+        }
+        _clearedCount = cleared;
+
+        int from = (flags & BoardDelta.KEYFRAME) != 0 ? 0 : _stackTop;
+        for (int i = from * _rowBytes; i < stackTop * _rowBytes; i++) {
+            _cells[i] = 0;
+        }
+        _stackTop = stackTop;
+        frame.get(_cells, first * _rowBytes, count * _rowBytes);
+        _gameOver = (flags & BoardDelta.GAME_OVER) != 0;
+    }
+
+    /**
+     * Returns whether the playable cell is filled, counting columns from 0 at
+     * the left wall and rows as on the Board.
+     */
+    public boolean isFilled(int row, int col) {
+        return (_cells[row * _rowBytes + (col >>> 3)] & 1 << (col & 7)) != 0;
+    }
+
+    /**
+     * Returns whether every playable cell is filled here exactly where it is
+     * on the board, which must be the size of this one.
+     */
+    public boolean matches(Board board) {
+        if (board.getStackTop() != _stackTop) {
+            return false;
+        }
+        for (int i = Constants.BORDER; i < _height - Constants.BORDER; i++) {
+            for (int j = 0; j < _cols; j++) {
+                if (this.isFilled(i, j) != board.isFilled(i, Constants.BORDER + j)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the rows the last frame said were cleared since the frame before
+     * it, in the order they were cleared, each numbered as it was when it was
+     * cleared. The array is reused by the next frame.
+     */
+    public int[] getClearedRows() {
+        return _cleared;
+    }
+
+    /**
+     * Returns how many entries of getClearedRows() are used.
+     */
+    public int getClearedCount() {
+        return _clearedCount;
+    }
+
+    /**
+     * Returns the number of rows including the border.
+     */
+    public int getHeight() {
+        return _height;
+    }
+
+    /**
+     * Returns the number of playable columns.
+     */
+    public int getCols() {
+        return _cols;
+    }
+
+    /**
+     * Returns the highest row with anything in it.
+     */
+    public int getStackTop() {
+        return _stackTop;
+    }
+
+    /**
+     * Returns the tick of the game the last frame was written on.
+     */
+    public int getTick() {
+        return _tick;
+    }
+
+    /**
+     * Returns whether the game is over.
+     */
+    public boolean isGameOver() {
+        return _gameOver;
+    }
+
+    /**
+     * Returns the type of the current piece.
+     */
+    public int getPieceType() {
+        return _pieceType;
+    }
+
+    /**
+     * Returns the orientation of the current piece.
+     */
+    public int getPieceOrientation() {
+        return _pieceOrientation;
+    }
+
+    /**
+     * Returns the column of the current piece's location on the Board.
+     */
+    public int getPieceX() {
+        return _pieceX;
+    }
+
+    /**
+     * Returns the row of the current piece's location.
+     */
+    public int getPieceY() {
+        return _pieceY;
+    }
+
+    /**
+     * Returns how many rows of garbage are waiting to come in.
+     */
+    public int getPendingGarbage() {
+        return _pendingGarbage;
+    }
+}
@@ -0,0 +1,252 @@
+package tetris;
+
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+
+/**
+ * Draws a Game with a Square for every filled cell on the game pane. When a piece
+ * locks its Squares stay on the pane as part of the board, and when rows are
+ * cleared the Squares in them are hidden and the ones above are moved down.
+ * After every step the Squares of the current piece and its ghost are moved to
+ * match the Game. Squares for pieces come from a SquarePool big enough to fill
+ * the whole board, so no nodes are added or removed while the game is played.
+ */
+public class NodeRenderer implements Renderer {
+    private Pane _gamePane;
+    private Game _game;
+    private Square[][] _squares;
+    private Square[] _pieceSquares;
+    private Square[] _ghostSquares;
+    private SquarePool _pool;
+    // whether the piece moved since the last update
+    private boolean _pieceMoved;
+
+    /**
+     * Takes the game pane to add the Squares to and the Game to draw, and draws
+     * the board and the first piece.
+     */
+    public NodeRenderer(Pane gamePane, Game game) {
+        _gamePane = gamePane;
+        _game = game;
+
+        Board board = _game.getBoard();
+        _squares = new Square[board.getHeight()][board.getWidth()];
+        this.drawBoard();
+
+        // ghost Squares are added first so they are always drawn under the pieces
+        _pieceSquares = new Square[Shapes.SQUARES];
+        _ghostSquares = new Square[Shapes.SQUARES];
+        for (int i = 0; i < _ghostSquares.length; i++) {
+            _ghostSquares[i] = new Square(0, 0, Palette.BACKGROUND);
+            _ghostSquares[i].getSquare().setOpacity(Constants.GHOST_OPACITY);
+            _gamePane.getChildren().add(_ghostSquares[i].getSquare());
+        }
+        int playableCells = (board.getHeight() - 2 * Constants.BORDER) * (board.getWidth() - 2 * Constants.BORDER);
+        _pool = new SquarePool(_gamePane, playableCells + Shapes.SQUARES);
+
+        this.makePieceSquares();
+    }
+
+    /**
+     * Moves the piece's Squares if it has moved since the last update.
+     */
+    @Override
+    public void update() {
+        if (_pieceMoved && !_game.isGameOver()) {
+            this.movePieceSquares();
+        }
+        _pieceMoved = false;
+    }
+
+    /**
+     * Takes Squares for the new piece straight away, so a piece that locks
+     * before the next update still has them. A piece that spawns with no room
+     * ends the game and gets none.
+     */
+    @Override
+    public void pieceSpawned(Piece piece) {
+        if (!_game.isGameOver()) {
+            this.makePieceSquares();
+        }
+        _pieceMoved = false;
+    }
+
+    /**
+     * Marks the piece's Squares to be moved by the next update.
+     */
+    @Override
+    public void pieceMoved(Piece piece) {
+        _pieceMoved = true;
+    }
+
+    /**
+     * Keeps the locked piece's Squares as part of the board.
+     */
+    @Override
+    public void pieceLocked(Piece piece) {
+        this.lockPieceSquares(piece);
+    }
+
+    /**
+     * Hides the Squares in the cleared rows and moves the rest down.
+     */
+    @Override
+    public void linesCleared(int[] rows, int count) {
+        this.clearRows(rows, count);
+    }
+
+    /**
+     * Takes new Squares for the whole board, since every row of the stack has
+     * moved up.
+     */
+    @Override
+    public void garbageAdded(int rows) {
+        this.resetBoardSquares();
+    }
+
+    /**
+     * Gives every Square on the board and of the piece back to the pool and
+     * takes new ones for the board and piece as they are now.
+     */
+    @Override
+    public void gameRestored() {
+        this.resetBoardSquares();
+
+        for (int i = 0; i < _pieceSquares.length; i++) {
+            if (_pieceSquares[i] != null) {
+                _pool.release(_pieceSquares[i]);
+                _pieceSquares[i] = null;
+            }
+            _ghostSquares[i].setVisible(false);
+        }
+        _pieceMoved = false;
+        if (!_game.isGameOver()) {
+            this.makePieceSquares();
+        }
+    }
+
+    /**
+     * Gives every Square on the board back to the pool and takes new ones for
+     * the board as it is now.
+     */
+    private void resetBoardSquares() {
+        Board board = _game.getBoard();
+        for (int i = Constants.BORDER; i < _squares.length - Constants.BORDER; i++) {
+            for (int j = Constants.BORDER; j < _squares[i].length - Constants.BORDER; j++) {
+                if (_squares[i][j] != null) {
+                    _pool.release(_squares[i][j]);
+                    _squares[i][j] = null;
+                }
+                byte cell = board.get(i, j);
+                if (cell != Board.EMPTY) {
+                    _squares[i][j] = _pool.acquire(i, j, Palette.ofCell(cell));
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes a Square for every filled cell on the board, which at the start of
+     * the game is just the border.
+     */
+    private void drawBoard() {
+        Board board = _game.getBoard();
+        for (int i = 0; i < _squares.length; i++) {
+            for (int j = 0; j < _squares[i].length; j++) {
+                byte cell = board.get(i, j);
+                if (cell != Board.EMPTY) {
+                    _squares[i][j] = new Square(i, j, Palette.ofCell(cell));
+                    _gamePane.getChildren().add(_squares[i][j].getSquare());
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes the Squares for the Game's current piece from the pool and shows the
+     * ghost Squares, which show where the piece will land, in its color.
+     */
+    private void makePieceSquares() {
+        Piece piece = _game.getPiece();
+        Color color = Palette.ofPiece(piece.getType());
+        for (int i = 0; i < _pieceSquares.length; i++) {
+            _ghostSquares[i].setColor(color);
+            _ghostSquares[i].setVisible(true);
+            _pieceSquares[i] = _pool.acquire(piece.getRow(i), piece.getCol(i), color);
+        }
+        this.movePieceSquares();
+    }
+
+    /**
+     * Sets each of the current piece's Squares to the location of the Game's
+     * current piece, and its ghost Squares to where the piece would land.
+     */
+    private void movePieceSquares() {
+        Piece piece = _game.getPiece();
+        int ghostDrop = piece.getGhostY() - piece.getY();
+        for (int i = 0; i < _pieceSquares.length; i++) {
+            _pieceSquares[i].setRow(piece.getRow(i));
+            _pieceSquares[i].setCol(piece.getCol(i));
+            _ghostSquares[i].setRow(piece.getRow(i) + ghostDrop);
+            _ghostSquares[i].setCol(piece.getCol(i));
+        }
+    }
+
+    /**
+     * Keeps the Squares of a piece that has locked on the game pane as part of
+     * the board, at the location where the piece locked, and hides its ghost.
+     * A piece that spawned with no Squares, such as one restored into a game
+     * that was over, takes them from the pool here.
+     */
+    private void lockPieceSquares(Piece piece) {
+        Color color = Palette.ofPiece(piece.getType());
+        for (int i = 0; i < _pieceSquares.length; i++) {
+            int row = piece.getRow(i);
+            int col = piece.getCol(i);
+            if (_pieceSquares[i] == null) {
+                _pieceSquares[i] = _pool.acquire(row, col, color);
+            }
+            _pieceSquares[i].setRow(row);
+            _pieceSquares[i].setCol(col);
+            _squares[row][col] = _pieceSquares[i];
+            _pieceSquares[i] = null;
+            _ghostSquares[i].setVisible(false);
+        }
+    }
+
+    /**
+     * Gives the Squares in the cleared rows back to the pool, then moves the
+     * rows above them down in one pass from the bottom up so each remaining
+     * Square is moved at most once. Takes the cleared rows from top to bottom
+     * and how many there are.
+     */
+    private void clearRows(int[] rows, int count) {
+        for (int i = 0; i < count; i++) {
+            for (int j = Constants.BORDER; j < _squares[rows[i]].length - Constants.BORDER; j++) {
+                _pool.release(_squares[rows[i]][j]);
+                _squares[rows[i]][j] = null;
+            }
+        }
+
+        int write = rows[count - 1];
+        int nextCleared = count - 1;
+        for (int read = write; read >= Constants.BORDER; read--) {
+            if (nextCleared >= 0 && rows[nextCleared] == read) {
+                nextCleared--;
+                continue;
+            }
+
+            if (write != read) {
+                for (int j = Constants.BORDER; j < _squares[read].length - Constants.BORDER; j++) {
+                    Square square = _squares[read][j];
+                    _squares[write][j] = square;
+                    _squares[read][j] = null;
+                    if (square != null) {
+                        square.setRow(write);
+                    }
+                }
+            }
+            write--;
+        }
+    }
+}
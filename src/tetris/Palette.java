@@ -0,0 +1,34 @@
+package tetris;
+
+import javafx.scene.paint.Color;
+
+/**
+ * The colors used to draw the game, kept apart from Constants so that the rules
+ * of the game can be loaded without JavaFX.
+ */
+public final class Palette {
+    public static final Color BACKGROUND = Color.FLORALWHITE;
+    public static final Color STROKE = Color.FLORALWHITE;
+
+    // fill of each board cell value, indexed by the values stored in Board
+    private static final Color[] CELL_COLORS = { BACKGROUND, Color.TOMATO, Color.LIGHTSALMON, Color.GOLD,
+            Color.YELLOWGREEN, Color.SKYBLUE, Color.ORCHID, Color.PINK, Color.BURLYWOOD, Color.DARKGRAY };
+
+    private Palette() {
+    }
+
+    /**
+     * Returns the fill of a board cell value, either Board.EMPTY,
+     * Board.BORDER_CELL, Board.GARBAGE_CELL or a piece type plus one.
+     */
+    public static Color ofCell(int cell) {
+        return CELL_COLORS[cell];
+    }
+
+    /**
+     * Returns the fill of a piece type.
+     */
+    public static Color ofPiece(int type) {
+        return CELL_COLORS[type + 1];
+    }
+}
@@ -20,9 +20,9 @@ public class PaneOrganizer {
 
     /**
      * Instantiates all the panes and adds the child panes to the root. Styles
-     * the game pane and instantiates the Tetris game.
+     * the game pane and instantiates the Tetris game with the Settings passed in.
      */
-    public PaneOrganizer() {
+    public PaneOrganizer(Settings settings) {
         _root = new BorderPane();
         _gamePane = new Pane();
         _bottomPane = new HBox();
@@ -36,7 +36,7 @@ public class PaneOrganizer {
         _root.setTop(_gamePane);
         _root.setBottom(_bottomPane);
 
-        new Tetris(_gamePane);
+        new Tetris(_gamePane, settings);
     }
 
     /**
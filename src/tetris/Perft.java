@@ -0,0 +1,342 @@
+package tetris;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts every distinct place a sequence of pieces can lock, the way chess
+ * engines count moves with perft, to check the move rules and time them. From
+ * where each piece spawns, every location and orientation it can reach by
+ * shifting, soft dropping and turning with Piece's own rules is searched breadth
+ * first, each (x, y, orientation) once. A location the piece cannot fall from
+ * is a place it can lock, and each of those is placed on a copy of the board,
+ * rows cleared, and the next piece searched from there. The count for a depth
+ * is how many places the last piece can lock summed over every way of placing
+ * the ones before it, so it finds tucks and spins the Bot never tries, and
+ * changes if collisions, kicks or line clears start to behave differently.
+ * The first piece's places are searched in parallel on a ForkJoinPool.
+ *
+ * Run with java -cp tetris.jar tetris.Perft followed by any of --depth=N,
+ * --pieces=letters such as TIJ, or --seed=S to take the pieces from a
+ * PieceGenerator, --rows=N and --cols=N, --threads=N and --expect=N,N,... with
+ * the counts each depth should give. Prints the count, time and nodes per
+ * second for every depth up to the last and exits with status 1 if a count is
+ * not the one expected.
+ */
+public class Perft {
+    // letters of the piece types, in the order of Constants.PIECE_COORDS
+    public static final String TYPE_LETTERS = "ITJLOSZ";
+
+    // columns and rows a piece's location can be outside the board
+    private static final int PAD = Shapes.SQUARES;
+
+    private Board _board;
+    private int[] _types;
+
+    /**
+     * Takes the board to start from, which is not changed, and the types of
+     * the pieces to place on it in order.
+     */
+    public Perft(Board board, int[] types) {
+        _board = board;
+        _types = types;
+    }
+
+    /**
+     * Returns how many distinct places the piece at the depth, from 1, can
+     * lock, summed over every way of placing the pieces before it. Searches
+     * the first piece's places in parallel on the pool, each on its own
+     * boards, or everything on the calling thread if the pool is null.
+     */
+    public long count(int depth, ForkJoinPool pool) {
+        if (depth < 1 || depth > _types.length) {
+            throw new IllegalArgumentException("Depth must be from 1 to " + _types.length);
+        }
+
+        Search root = new Search(_board, 0, depth);
+        if (pool == null) {
+            return root.count(0);
+        }
+        int places = root.findLocks(0);
+        if (depth == 1) {
+            return places;
+        }
+
+        final List<BranchTask> tasks = new ArrayList<BranchTask>();
+        for (int i = 0; i < places; i++) {
+            tasks.add(new BranchTask(root.placeLock(0, i), depth));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        });
+
+        long total = 0;
+        for (BranchTask task: tasks) {
+            total += task.join();
+        }
+        return total;
+    }
+
+    /**
+     * Turns letters from TYPE_LETTERS into piece types.
+     */
+    public static int[] parseTypes(String letters) {
+        int[] types = new int[letters.length()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = TYPE_LETTERS.indexOf(Character.toUpperCase(letters.charAt(i)));
+            if (types[i] < 0) {
+                throw new IllegalArgumentException("Unknown piece " + letters.charAt(i) + ", expected one of "
+                        + TYPE_LETTERS);
+            }
+        }
+        return types;
+    }
+
+    /**
+     * The boards, pieces and buffers for searching every level below one
+     * starting board, so one thread can search a whole branch without
+     * allocating. Every level keeps a stamp for each location the piece can
+     * be at, marked with the number of the search that reached it, so a new
+     * search does not have to clear what the last one reached.
+     */
+    private class Search {
+        private int _depth;
+        private int _stride;
+        private Board[] _boards;
+        private Piece[] _pieces;
+        private int[][] _stamps;
+        private int[] _searches;
+        private int[][] _queues;
+        private int[][] _locks;
+
+        /**
+         * Takes a copy of the board for the first level searched and makes
+         * scratch boards and buffers for the levels below it, down to the
+         * depth. Levels above the first have none, since they are never
+         * searched.
+         */
+        Search(Board board, int first, int depth) {
+            _depth = depth;
+            _stride = board.getWidth() + 2 * PAD;
+            int states = (board.getHeight() + 2 * PAD) * _stride * Shapes.ORIENTATIONS;
+            _boards = new Board[depth];
+            _pieces = new Piece[depth];
+            _stamps = new int[depth][];
+            _searches = new int[depth];
+            _queues = new int[depth][];
+            _locks = new int[depth][];
+            for (int level = first; level < depth; level++) {
+                _boards[level] = new Board(board);
+                _pieces[level] = new Piece(_boards[level], _types[level]);
+            }
+            for (int level = first; level < depth; level++) {
+                _stamps[level] = new int[states];
+                _queues[level] = new int[states];
+                _locks[level] = new int[states];
+            }
+        }
+
+        /**
+         * Returns the count for the level's piece on the level's board, placing
+         * it in every way it can lock and counting the levels below.
+         */
+        long count(int level) {
+            int places = this.findLocks(level);
+            if (level == _depth - 1) {
+                return places;
+            }
+
+            long total = 0;
+            for (int i = 0; i < places; i++) {
+                this.placeLock(level, i);
+                total += this.count(level + 1);
+            }
+            return total;
+        }
+
+        /**
+         * Copies the level's board to the next level and places the level's
+         * piece at one of the places it can lock, clearing any full rows.
+         * Returns the next level's board.
+         */
+        Board placeLock(int level, int lock) {
+            int state = _locks[level][lock];
+            int orientation = state % Shapes.ORIENTATIONS;
+            int x = state / Shapes.ORIENTATIONS % _stride - PAD;
+            int y = state / Shapes.ORIENTATIONS / _stride - PAD;
+            int type = _types[level];
+            int index = Shapes.index(type, orientation);
+            Board child = _boards[level + 1];
+            child.copyFrom(_boards[level]);
+            child.place(type, orientation, x, y);
+            int top = y + Shapes.MIN_DY[index];
+            child.clearLines(top, top + Shapes.HEIGHT[index] - 1);
+            return child;
+        }
+
+        /**
+         * Searches every location the level's piece can reach from where it
+         * spawns and keeps the ones it can lock at. Returns how many there
+         * are, or 0 if the piece has no room to spawn.
+         */
+        int findLocks(int level) {
+            Piece piece = _pieces[level];
+            int type = _types[level];
+            int[] stamps = _stamps[level];
+            int[] queue = _queues[level];
+            int[] locks = _locks[level];
+            int search = ++_searches[level];
+            if (search == Integer.MAX_VALUE) {
+                Arrays.fill(stamps, 0);
+                _searches[level] = search = 1;
+            }
+
+            piece.spawn(type);
+            if (piece.isBlocked()) {
+                return 0;
+            }
+            int head = 0;
+            int tail = 0;
+            int places = 0;
+            int start = this.state(piece.getX(), piece.getY(), piece.getOrientation());
+            stamps[start] = search;
+            queue[tail++] = start;
+
+            while (head < tail) {
+                int state = queue[head++];
+                int orientation = state % Shapes.ORIENTATIONS;
+                int x = state / Shapes.ORIENTATIONS % _stride - PAD;
+                int y = state / Shapes.ORIENTATIONS / _stride - PAD;
+
+                piece.setLocation(type, x, y, orientation);
+                if (piece.moveY()) {
+                    tail = this.visit(piece, stamps, search, queue, tail);
+                }
+                else {
+                    locks[places++] = state;
+                }
+                for (int direction = -1; direction <= 1; direction += 2) {
+                    piece.setLocation(type, x, y, orientation);
+                    if (piece.moveX(direction)) {
+                        tail = this.visit(piece, stamps, search, queue, tail);
+                    }
+                }
+                piece.setLocation(type, x, y, orientation);
+                if (piece.rotate()) {
+                    tail = this.visit(piece, stamps, search, queue, tail);
+                }
+            }
+            return places;
+        }
+
+        /**
+         * Adds the piece's location to the queue unless this search has
+         * already reached it. Returns the new end of the queue.
+         */
+        private int visit(Piece piece, int[] stamps, int search, int[] queue, int tail) {
+            int state = this.state(piece.getX(), piece.getY(), piece.getOrientation());
+            if (stamps[state] != search) {
+                stamps[state] = search;
+                queue[tail++] = state;
+            }
+            return tail;
+        }
+
+        /**
+         * Returns the number of a location and orientation of a piece.
+         */
+        private int state(int x, int y, int orientation) {
+            return ((y + PAD) * _stride + x + PAD) * Shapes.ORIENTATIONS + orientation;
+        }
+    }
+
+    /**
+     * Counts one of the first piece's places on its own Search, so that places
+     * can be counted on different threads.
+     */
+    private class BranchTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private Board _board;
+        private int _depth;
+
+        /**
+         * Takes a copy of the board with the first piece placed and the depth
+         * of the whole count.
+         */
+        BranchTask(Board board, int depth) {
+            _board = new Board(board);
+            _depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            Search search = new Search(_board, 1, _depth);
+            return search.count(1);
+        }
+    }
+
+    /**
+     * Reads the options, prints the count for every depth up to the one asked
+     * for, and exits with status 1 if any count differs from the one expected.
+     */
+    public static void main(String[] argv) {
+        Map<String, String> options = Settings.parseArguments(argv);
+        int depth = Integer.parseInt(options.getOrDefault("depth", "3"));
+        int rows = Integer.parseInt(options.getOrDefault("rows", Integer.toString(Constants.BOARD_ROWS)));
+        int cols = Integer.parseInt(options.getOrDefault("cols", Integer.toString(Constants.BOARD_COLS)));
+        int threads = Integer.parseInt(options.getOrDefault("threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+        String expect = options.get("expect");
+
+        int[] types;
+        if (options.containsKey("pieces")) {
+            types = parseTypes(options.get("pieces"));
+            depth = Math.min(depth, types.length);
+        }
+        else {
+            PieceGenerator generator = new PieceGenerator(Long.parseLong(options.getOrDefault("seed", "1")),
+                    Constants.PREVIEW_SIZE);
+            types = new int[depth];
+            for (int i = 0; i < depth; i++) {
+                types[i] = generator.next();
+            }
+        }
+        StringBuilder letters = new StringBuilder();
+        for (int type: types) {
+            letters.append(TYPE_LETTERS.charAt(type));
+        }
+
+        Perft perft = new Perft(new Board(rows, cols), types);
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        String[] expected = expect == null ? new String[0] : expect.split(",");
+        boolean failed = false;
+        System.out.println("Pieces " + letters + " on a " + cols + "x" + rows + " board");
+        for (int d = 1; d <= depth; d++) {
+            long start = System.nanoTime();
+            long nodes = perft.count(d, pool);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            String line = String.format("depth %d: %d nodes in %.3f s (%.0f nodes/s)", d, nodes, seconds,
+                    nodes / Math.max(seconds, 1e-9));
+            if (d <= expected.length && Long.parseLong(expected[d - 1].trim()) != nodes) {
+                line += ", expected " + expected[d - 1].trim();
+                failed = true;
+            }
+            System.out.println(line);
+        }
+        if (pool != null) {
+            pool.shutdown();
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+}
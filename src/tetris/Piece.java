@@ -1,163 +1,233 @@
 package tetris;
 
-import javafx.scene.layout.Pane;
-import javafx.scene.paint.Color;
-
 /**
  * Pieces that the user controls to play the game. Can be moved left, right, and
- * down and rotate according to keyboard input. Moves down according to the timeline.
- * Based on parameters passed in from Tetris, randomly generates 1 of 7 types
- * of pieces. Pieces are added graphically upon instantiation but are added
- * logically to the board array when they fall as far down as possible and lock
- * into place so other pieces can then detect them.
+ * down and rotate according to input from the Game. A piece is stored as its
+ * type, its location and its orientation, and the squares it covers are looked
+ * up in the Shapes tables, so it can be used without any graphics; the Tetris
+ * class draws it. Pieces are added to the board when they fall as far down as
+ * possible and lock into place so other pieces can then detect them. Moves are
+ * tested in place against the board, so moving a piece never allocates.
  */
 
 public class Piece {
-    private Pane _gamePane;
-    private Square[][] _board;
-    private Square[] _pieceSquares;
-    private boolean isSquare;
+    private Board _board;
+    private int _type;
+    private int _x;
+    private int _y;
+    private int _orientation;
+    private int _ghostY;
+    private boolean _ghostMoved;
 
     /**
-     * Takes the game pane as a parameter to add Squares to and takes the board
-     * array so the Squares can be added when the piece is locked. Takes a set
-     * of coordinates and a color randomly passed in from Tetris for the 7
-     * configurations of pieces. Stores the Square components of the Piece in an
-     * array and checks whether the piece is a square piece.
+     * Takes the board so the piece can check its moves against it and add
+     * itself when it is locked. Takes the type of the piece, an index into
+     * Constants.PIECE_COORDS, and places it at the piece origin.
      */
-    public Piece(Pane gamePane, Square[][] board, int[][] coords, Color color) {
-        _gamePane = gamePane;
+    public Piece(Board board, int type) {
         _board = board;
+        this.spawn(type);
+    }
 
-        _pieceSquares = new Square[coords.length];
-        this.makeSquares(coords, color);
+    /**
+     * Turns the piece into a new piece of the type at the piece origin, in the
+     * middle column of the board, in the configuration from Constants. The Game
+     * reuses one Piece for every piece it spawns so that playing does not
+     * allocate anything.
+     */
+    public void spawn(int type) {
+        _type = type;
+        _x = _board.getSpawnX();
+        _y = Constants.PIECE_ORIGIN_Y;
+        _orientation = 0;
+        _ghostMoved = true;
+    }
 
-        if (coords.equals(Constants.O_PIECE_COORDS)) {
-            isSquare = true;
-        }
-        else {
-            isSquare = false;
-        }
+    /**
+     * Gives this piece the type, location and orientation of the piece passed
+     * in, without checking the board. Used to try out moves on a copy.
+     */
+    public void copyFrom(Piece other) {
+        this.setLocation(other._type, other._x, other._y, other._orientation);
     }
 
     /**
-     * Instantiates the Squares for the Piece based on the coordinates passed in
-     * for the configuration. Adds the Squares to the component array and to the
-     * game pane.
+     * Sets the type, location and orientation of the piece without checking the
+     * board.
      */
-    private void makeSquares(int[][] coords, Color color) {
-        for (int i = 0; i < _pieceSquares.length; i++) {
-            int row = coords[i][1] + Constants.PIECE_ORIGIN_Y;
-            int col = coords[i][0] + Constants.PIECE_ORIGIN_X;
-            _pieceSquares[i] = new Square(row, col, color);
-            _gamePane.getChildren().add(_pieceSquares[i].getSquare());
-        }
+    public void setLocation(int type, int x, int y, int orientation) {
+        _type = type;
+        _x = x;
+        _y = y;
+        _orientation = orientation;
+        _ghostMoved = true;
     }
 
     /**
-     * Shifts the Piece down by one row.
-     * Calculates the new location of the Piece's squares and checks if the move
-     * is valid. If it is, moves all the squares down, if not locks the piece into
-     * place on the board. Returns whether or not the piece was successfully moved.
+     * Shifts the Piece down by one row if the board has room for it. Returns
+     * whether or not the piece was successfully moved.
      */
     public boolean moveY() {
-        int[][] newCoords = new int[_pieceSquares.length][2];
-
-        for (int i = 0; i < _pieceSquares.length; i++) {
-            newCoords[i][0] = _pieceSquares[i].getCol();
-            newCoords[i][1] = _pieceSquares[i].getRow() + 1;
+        if (!_board.collides(_type, _orientation, _x, _y + 1)) {
+            // falling does not change where the piece will land
+            _y++;
+            return true;
         }
+        return false;
+    }
+
+    /**
+     * Moves the Piece down by up to the number of rows passed in, stopping where
+     * it would land. Uses the cached landing row, so falling many rows costs the
+     * same as falling one. Returns the number of rows it fell.
+     */
+    public int fall(int rows) {
+        int distance = Math.min(rows, this.getGhostY() - _y);
+        _y += distance;
+        return distance;
+    }
 
-        if (moveIsValid(newCoords)) {
-            this.setNewCoords(newCoords);
+    /**
+     * Shifts the Piece left or right by one column if the board has room for it.
+     * Takes the direction as a parameter (-1 for left and 1 for right). Returns
+     * whether or not the piece was moved.
+     */
+    public boolean moveX(int direction) {
+        if (!_board.collides(_type, _orientation, _x + direction, _y)) {
+            _x += direction;
+            _ghostMoved = true;
             return true;
         }
-        else {
-            this.lockPiece();
-            return false;
+        return false;
+    }
+
+    /**
+     * Rotates the piece by 90 degrees counter clockwise. Looks up the next
+     * orientation and tries it at each of its kick offsets in turn, moving the
+     * piece to the first one that fits. Returns whether or not the piece was
+     * rotated.
+     */
+    public boolean rotate() {
+        int next = (_orientation + 1) % Shapes.ORIENTATIONS;
+        int kicks = Shapes.index(_type, _orientation) * Shapes.KICKS;
+
+        for (int i = 0; i < Shapes.KICKS; i++) {
+            int x = _x + Shapes.KICK_X[kicks + i];
+            int y = _y + Shapes.KICK_Y[kicks + i];
+            if (!_board.collides(_type, next, x, y)) {
+                _x = x;
+                _y = y;
+                _orientation = next;
+                _ghostMoved = true;
+                return true;
+            }
         }
+        return false;
     }
 
     /**
-     * Shifts the Piece left or right by one column.
-     * Calculates the new location, checks if the move is valid, and then moves
-     * accordingly. Takes the direction as a parameter (-1 for left and 1 for right).
+     * Moves the Piece straight down as far as it can go using the board's
+     * column tops. Returns the number of rows it fell.
      */
-    public void moveX(int direction) {
-        int[][] newCoords = new int[_pieceSquares.length][2];
+    public int drop() {
+        int distance = _board.dropDistance(_type, _orientation, _x, _y);
+        _y += distance;
+        _ghostY = _y;
+        _ghostMoved = false;
+        return distance;
+    }
 
-        for (int i = 0; i < _pieceSquares.length; i++) {
-            newCoords[i][0] = _pieceSquares[i].getCol() + direction;
-            newCoords[i][1] = _pieceSquares[i].getRow();
+    /**
+     * Returns the row the piece would be at if it were dropped, where its ghost
+     * is drawn. Only worked out again after the piece has moved sideways, turned
+     * or been spawned.
+     */
+    public int getGhostY() {
+        if (_ghostMoved) {
+            _ghostY = _y + _board.dropDistance(_type, _orientation, _x, _y);
+            _ghostMoved = false;
         }
+        return _ghostY;
+    }
 
-        if (moveIsValid(newCoords)) {
-            this.setNewCoords(newCoords);
-        }
-     }
+    /**
+     * Returns whether the piece overlaps anything on the board where it is now.
+     * Used when a new piece is spawned to tell if the stack has reached the top.
+     */
+    public boolean isBlocked() {
+        return _board.collides(_type, _orientation, _x, _y);
+    }
 
     /**
-     * Rotates the piece by 90 degrees counter clockwise.
-     * Calculates the new location, checks if the move is valid, and then moves
-     * accordingly. Does nothing if the piece is a square.
+     * Called when the Piece has moved as far down as it possibly can. Adds the
+     * Piece's squares logically to the board so that future pieces can detect it
+     * and collide with it.
      */
-    public void rotate() {
-        if (!isSquare) {
-            int rotateCenterX = _pieceSquares[1].getCol();
-            int rotateCenterY = _pieceSquares[1].getRow();
+    public void lockPiece() {
+        _board.place(_type, _orientation, _x, _y);
+    }
 
-            int[][] newCoords = new int[_pieceSquares.length][2];
+    /**
+     * Returns the type of the piece, an index into Constants.PIECE_COORDS.
+     */
+    public int getType() {
+        return _type;
+    }
 
-            for (int i = 0; i < _pieceSquares.length; i++) {
-                int currCol = _pieceSquares[i].getCol();
-                int currRow = _pieceSquares[i].getRow();
+    /**
+     * Returns the column of the piece's location.
+     */
+    public int getX() {
+        return _x;
+    }
 
-                newCoords[i][0] = rotateCenterX - rotateCenterY + currRow;
-                newCoords[i][1] = rotateCenterY + rotateCenterX - currCol;
-            }
+    /**
+     * Returns the row of the piece's location.
+     */
+    public int getY() {
+        return _y;
+    }
 
-            if (moveIsValid(newCoords)) {
-                this.setNewCoords(newCoords);
-            }
-        }
+    /**
+     * Returns the orientation of the piece, from 0 to 3.
+     */
+    public int getOrientation() {
+        return _orientation;
     }
 
     /**
-     * Returns whether a move is valid. Takes an array of the new coordinates
-     * of the Piece's Squares as a parameter and checks that the board does not
-     * already have any Squares stored in any of the new locations.
+     * Returns the highest row the piece covers.
      */
-    private boolean moveIsValid(int[][] newCoords) {
-        for (int i = 0; i < newCoords.length; i++) {
-            if (_board[ newCoords[i][1] ][ newCoords[i][0] ] != null) {
-                return false;
-            }
-        }
-        return true;
+    public int getTopRow() {
+        return _y + Shapes.MIN_DY[Shapes.index(_type, _orientation)];
     }
 
     /**
-     * Called when a move is checked and found to be successful. Takes the new
-     * Square coordinates as a parameter and sets each Square in the square components
-     * of the Piece to its new location.
+     * Returns the lowest row the piece covers.
      */
-    private void setNewCoords(int[][] newCoords) {
-        for (int i = 0; i < _pieceSquares.length; i++) {
-            _pieceSquares[i].setCol(newCoords[i][0]);
-            _pieceSquares[i].setRow(newCoords[i][1]);
-        }
+    public int getBottomRow() {
+        int index = Shapes.index(_type, _orientation);
+        return _y + Shapes.MIN_DY[index] + Shapes.HEIGHT[index] - 1;
     }
 
     /**
-     * Called when the Piece has moved as far down as it possibly can. Adds the
-     * Piece's Squares logically to the board so that future pieces can detect it
-     * and collide with it.
+     * Returns the number of squares in the piece.
      */
-    private void lockPiece() {
-        for (Square square: _pieceSquares) {
-            if (square != null) {
-                _board[square.getRow()][square.getCol()] = square;
-            }
-        }
+    public int size() {
+        return Shapes.SQUARES;
+    }
+
+    /**
+     * Returns the row of the square at the index.
+     */
+    public int getRow(int square) {
+        return _y + Shapes.DY[Shapes.index(_type, _orientation) * Shapes.SQUARES + square];
+    }
+
+    /**
+     * Returns the column of the square at the index.
+     */
+    public int getCol(int square) {
+        return _x + Shapes.DX[Shapes.index(_type, _orientation) * Shapes.SQUARES + square];
     }
 }
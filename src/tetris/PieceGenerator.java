@@ -0,0 +1,195 @@
+package tetris;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Chooses the order pieces are spawned in for one game. Uses the standard 7-bag
+ * randomizer: all 7 types are shuffled into a bag and dealt out one at a time,
+ * and a new bag is shuffled when it runs out, so every type comes up once in
+ * every 7 pieces. The next few pieces are kept in a preview queue that is made
+ * once as a ring buffer and refilled in place.
+ *
+ * Each generator has its own random state seeded explicitly, using the SplitMix64
+ * steps behind java.util.SplittableRandom, so games running on different threads
+ * never share anything and a game started with the same seed always gets the
+ * same pieces. The state is a single long so it can be saved and restored.
+ */
+public class PieceGenerator {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long _seed;
+    private long _state;
+    private int[] _bag;
+    private int _bagIndex;
+    private int[] _queue;
+    private int _head;
+    private int _previewSize;
+
+    /**
+     * Takes the seed and how many upcoming pieces to keep in the preview queue,
+     * and fills the queue.
+     */
+    public PieceGenerator(long seed, int previewSize) {
+        _seed = seed;
+        _state = seed;
+        _previewSize = previewSize;
+        _bag = new int[Constants.NUM_PIECE_TYPES];
+        _bagIndex = _bag.length;
+
+        // a power of two so the ring buffer can wrap with a mask
+        _queue = new int[Integer.highestOneBit(Math.max(1, previewSize)) << 1];
+        for (int i = 0; i < previewSize; i++) {
+            _queue[i] = this.nextFromBag();
+        }
+        _head = 0;
+    }
+
+    /**
+     * Returns the type of the next piece and deals another piece onto the end
+     * of the preview queue.
+     */
+    public int next() {
+        if (_previewSize == 0) {
+            return this.nextFromBag();
+        }
+
+        int mask = _queue.length - 1;
+        int type = _queue[_head];
+        _queue[(_head + _previewSize) & mask] = this.nextFromBag();
+        _head = (_head + 1) & mask;
+        return type;
+    }
+
+    /**
+     * Returns the type of an upcoming piece without taking it, where 0 is the
+     * piece next() will return. Takes an index less than the preview size.
+     */
+    public int peek(int index) {
+        if (index < 0 || index >= _previewSize) {
+            throw new IndexOutOfBoundsException("Preview index " + index + " outside 0 to " + (_previewSize - 1));
+        }
+        return _queue[(_head + index) & (_queue.length - 1)];
+    }
+
+    /**
+     * Returns how many upcoming pieces can be previewed.
+     */
+    public int getPreviewSize() {
+        return _previewSize;
+    }
+
+    /**
+     * Returns the seed the generator was created with.
+     */
+    public long getSeed() {
+        return _seed;
+    }
+
+    /**
+     * Writes the random state, the bag and the preview queue to the buffer, in
+     * 19 bytes plus one for every preview piece.
+     */
+    public void writeState(ByteBuffer buffer) {
+        buffer.putLong(_seed);
+        buffer.putLong(_state);
+        buffer.put((byte) _bagIndex);
+        for (int i = 0; i < _bag.length; i++) {
+            buffer.put((byte) _bag[i]);
+        }
+        buffer.put((byte) _previewSize);
+        for (int i = 0; i < _previewSize; i++) {
+            buffer.put((byte) this.peek(i));
+        }
+    }
+
+    /**
+     * Checks that a state written by writeState fits this generator, reading a
+     * copy of the buffer. Throws an IllegalArgumentException if the preview
+     * size differs or the bag or queue holds a piece type that cannot be.
+     */
+    public void checkState(ByteBuffer buffer) {
+        ByteBuffer state = buffer.duplicate();
+        state.getLong();
+        state.getLong();
+        int bagIndex = state.get();
+        boolean valid = bagIndex >= 0 && bagIndex <= _bag.length;
+        for (int i = 0; i < _bag.length; i++) {
+            valid &= isType(state.get());
+        }
+        int previewSize = state.get();
+        if (previewSize != _previewSize) {
+            throw new IllegalArgumentException("Saved preview of " + previewSize + " pieces, expected " + _previewSize);
+        }
+        for (int i = 0; i < _previewSize; i++) {
+            valid &= isType(state.get());
+        }
+        if (!valid) {
+            throw new IllegalArgumentException("Saved bag or preview holds a piece that cannot be");
+        }
+    }
+
+    /**
+     * Returns whether the value is a piece type.
+     */
+    private static boolean isType(int type) {
+        return type >= 0 && type < Constants.NUM_PIECE_TYPES;
+    }
+
+    /**
+     * Reads back a state written by writeState, which must have the same
+     * preview size, so the generator deals the same pieces from then on.
+     * Throws an IllegalArgumentException before anything changes if
+     * checkState refuses the state.
+     */
+    public void readState(ByteBuffer buffer) {
+        this.checkState(buffer);
+        _seed = buffer.getLong();
+        _state = buffer.getLong();
+        _bagIndex = buffer.get();
+        for (int i = 0; i < _bag.length; i++) {
+            _bag[i] = buffer.get();
+        }
+        buffer.get();
+        _head = 0;
+        for (int i = 0; i < _previewSize; i++) {
+            _queue[i] = buffer.get();
+        }
+    }
+
+    /**
+     * Deals the next piece out of the bag, shuffling a new bag when it is empty.
+     */
+    private int nextFromBag() {
+        if (_bagIndex == _bag.length) {
+            for (int i = 0; i < _bag.length; i++) {
+                _bag[i] = i;
+            }
+            for (int i = _bag.length - 1; i > 0; i--) {
+                int j = this.nextInt(i + 1);
+                int swap = _bag[i];
+                _bag[i] = _bag[j];
+                _bag[j] = swap;
+            }
+            _bagIndex = 0;
+        }
+        return _bag[_bagIndex++];
+    }
+
+    /**
+     * Returns a random int from 0 up to but not including the bound.
+     */
+    private int nextInt(int bound) {
+        return (int) (((this.nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * Moves the random state forward and returns the next random long.
+     */
+    private long nextLong() {
+        _state += GOLDEN_GAMMA;
+        long z = _state;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,149 @@
+package tetris;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Follows a Game through its listener and adds a row to a DatasetWriter for
+ * every piece placed: the game's number, the piece's number and type, the
+ * Features of the board the piece spawned on, where the piece locked, how
+ * many rows it cleared and the height of every column once the rows were
+ * cleared and any garbage came in. Locations are counted in playable columns
+ * and rows from 0 at the top left. Rows are kept in a small batch and given
+ * to the writer BATCH_ROWS at a time, so games on many threads can share one
+ * writer. Each game's rows then come in order but in runs of up to BATCH_ROWS
+ * between other games' rows.
+ */
+public class PlacementRecorder implements GameListener {
+    public static final int BATCH_ROWS = 256;
+
+    // columns before the heights
+    private static final String[] FIXED_COLUMNS = { "game", "piece", "type", "holes", "bumpiness", "height",
+            "max_height", "wells", "x", "y", "orientation", "lines" };
+
+    private Game _game;
+    private int _number;
+    private DatasetWriter _writer;
+    private int _columns;
+    private int[] _batch;
+    private int _rows;
+    private int[] _row;
+    private boolean _locked;
+
+    /**
+     * Starts recording the game, numbered as given, into the writer, which
+     * must have the columns for the width of the game's board.
+     */
+    public PlacementRecorder(Game game, int number, DatasetWriter writer) {
+        _game = game;
+        _number = number;
+        _writer = writer;
+        _columns = writer.getColumns().length;
+        _batch = new int[BATCH_ROWS * _columns];
+        _row = new int[_columns];
+        _game.addListener(this);
+        this.measure();
+    }
+
+    /**
+     * Returns the names of the columns for a board with the number of playable
+     * columns.
+     */
+    public static String[] columns(int cols) {
+        String[] columns = new String[FIXED_COLUMNS.length + cols];
+        System.arraycopy(FIXED_COLUMNS, 0, columns, 0, FIXED_COLUMNS.length);
+        for (int j = 0; j < cols; j++) {
+            columns[FIXED_COLUMNS.length + j] = "height_" + j;
+        }
+        return columns;
+    }
+
+    /**
+     * Finishes the last piece's row and measures the board the new piece
+     * spawned on.
+     */
+    @Override
+    public void pieceSpawned(Piece piece) {
+        this.finishRow();
+        this.measure();
+    }
+
+    /**
+     * Keeps the type of the piece and where it locked.
+     */
+    @Override
+    public void pieceLocked(Piece piece) {
+        _row[1] = _game.getPiecesPlaced() - 1;
+        _row[2] = piece.getType();
+        _row[8] = piece.getX() - Constants.BORDER;
+        _row[9] = piece.getY() - Constants.BORDER;
+        _row[10] = piece.getOrientation();
+        _row[11] = 0;
+        _locked = true;
+    }
+
+    /**
+     * Keeps how many rows the piece cleared.
+     */
+    @Override
+    public void linesCleared(int[] rows, int count) {
+        _row[11] = count;
+    }
+
+    /**
+     * Finishes the row of the piece that ended the game.
+     */
+    @Override
+    public void gameOver() {
+        this.finishRow();
+    }
+
+    /**
+     * Gives the rows held to the writer.
+     */
+    public void flush() throws IOException {
+        if (_rows > 0) {
+            _writer.append(_batch, _rows);
+            _rows = 0;
+        }
+    }
+
+    /**
+     * Measures the board before the current piece is placed.
+     */
+    private void measure() {
+        Board board = _game.getBoard();
+        _row[0] = _number;
+        _row[3] = Features.holes(board);
+        _row[4] = Features.bumpiness(board);
+        _row[5] = Features.aggregateHeight(board);
+        _row[6] = Features.maxHeight(board);
+        _row[7] = Features.wells(board);
+    }
+
+    /**
+     * Adds the heights of the columns to the row of the piece that locked last
+     * and adds the row to the batch, giving the batch to the writer when it is
+     * full.
+     */
+    private void finishRow() {
+        if (!_locked) {
+            return;
+        }
+        _locked = false;
+        Board board = _game.getBoard();
+        for (int j = FIXED_COLUMNS.length; j < _columns; j++) {
+            _row[j] = Features.columnHeight(board, Constants.BORDER + j - FIXED_COLUMNS.length);
+        }
+        System.arraycopy(_row, 0, _batch, _rows * _columns, _columns);
+        _rows++;
+        if (_rows == BATCH_ROWS) {
+            try {
+                this.flush();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
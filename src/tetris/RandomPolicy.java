@@ -0,0 +1,43 @@
+package tetris;
+
+import java.util.SplittableRandom;
+
+/**
+ * Plays each piece by turning it, shifting it and dropping it a random amount,
+ * letting it fall a few rows on the way, then hard dropping it. Uses its own
+ * seeded random numbers so the same seed always plays the same moves.
+ */
+public class RandomPolicy implements InputPolicy {
+    private SplittableRandom _random;
+
+    /**
+     * Takes the seed for the random moves.
+     */
+    public RandomPolicy(long seed) {
+        _random = new SplittableRandom(seed);
+    }
+
+    @Override
+    public void play(Game game) {
+        int pieces = game.getPiecesPlaced();
+        int turns = _random.nextInt(Shapes.ORIENTATIONS);
+        for (int i = 0; i < turns; i++) {
+            game.input(Input.ROTATE);
+        }
+
+        int cols = game.getBoard().getWidth() - 2 * Constants.BORDER;
+        int shift = _random.nextInt(-cols / 2, cols / 2 + 1);
+        for (int i = 0; i < Math.abs(shift); i++) {
+            game.input(shift < 0 ? Input.LEFT : Input.RIGHT);
+        }
+
+        int falls = _random.nextInt(4);
+        for (int i = 0; i < falls && game.getPiecesPlaced() == pieces; i++) {
+            game.tick();
+        }
+
+        if (game.getPiecesPlaced() == pieces) {
+            game.input(Input.HARD_DROP);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package tetris;
+
+/**
+ * Draws a Game. The Game tells a Renderer when a piece spawns, moves or locks
+ * and which rows are cleared, and Tetris calls update() after every step so the
+ * current piece can be drawn again if the Game said it changed. Tetris picks
+ * which Renderer to use when it starts, from the Settings.
+ */
+public interface Renderer extends GameListener {
+
+    /**
+     * Brings the drawing of the current piece and its ghost up to date with the
+     * Game after it has moved forward.
+     */
+    void update();
+}
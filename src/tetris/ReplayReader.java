@@ -0,0 +1,169 @@
+package tetris;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Plays back a game recorded by a ReplayWriter. The file is memory mapped and the
+ * game is driven straight from the mapped bytes with no display and no waiting
+ * between ticks, so whole archives of replays can be played back quickly to
+ * check their results or to time the engine.
+ */
+public class ReplayReader {
+    private ByteBuffer _data;
+    private long _seed;
+    private int _gravity;
+    private int _lockDelay;
+    private int _startLevel;
+    private int _rows;
+    private int _cols;
+
+    /**
+     * Maps the replay file and reads its header.
+     */
+    public ReplayReader(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            _data = data;
+        }
+
+        if (_data.remaining() < 13 || _data.getInt() != ReplayWriter.MAGIC) {
+            throw new IOException(path + " is not a replay");
+        }
+        byte version = _data.get();
+        if (version < 1 || version > ReplayWriter.VERSION) {
+            throw new IOException(path + " is replay version " + version + ", expected " + ReplayWriter.VERSION);
+        }
+        _seed = _data.getLong();
+        // version 1 replays were played at one row a tick with no lock delay,
+        // and before version 3 gravity never followed the level and before
+        // version 4 every board was the standard size
+        _gravity = Constants.GRAVITY_ONE;
+        _lockDelay = 0;
+        _startLevel = 0;
+        _rows = Constants.BOARD_ROWS;
+        _cols = Constants.BOARD_COLS;
+        if (version >= 2) {
+            if (_data.remaining() < (version >= 4 ? 20 : version >= 3 ? 12 : 8)) {
+                throw new IOException(path + " is not a replay");
+            }
+            _gravity = _data.getInt();
+            _lockDelay = _data.getInt();
+        }
+        if (version >= 3) {
+            _startLevel = _data.getInt();
+        }
+        if (version >= 4) {
+            _rows = _data.getInt();
+            _cols = _data.getInt();
+        }
+    }
+
+    /**
+     * Returns the seed of the recorded game.
+     */
+    public long getSeed() {
+        return _seed;
+    }
+
+    /**
+     * Returns a new Game with the recorded seed, board size, gravity, lock delay
+     * and starting level, ready to be played by play(Game), so listeners can be
+     * added to it first.
+     */
+    public Game createGame() {
+        Game game = new Game(_seed, _rows, _cols);
+        game.setGravity(_gravity);
+        game.setLockDelay(_lockDelay);
+        if (_startLevel > 0) {
+            game.setStartLevel(_startLevel);
+        }
+        return game;
+    }
+
+    /**
+     * Plays the whole replay on a new Game with the recorded seed, board size,
+     * gravity, lock delay and starting level and returns the Game as it was
+     * when the recording ended. Can only be called once.
+     */
+    public Game play() throws IOException {
+        return this.play(this.createGame());
+    }
+
+    /**
+     * Plays the whole replay on the Game passed in, which must have been created
+     * with the recorded seed, board size, gravity, lock delay and starting
+     * level, and returns it.
+     */
+    public Game play(Game game) throws IOException {
+        int tick = game.getTicks();
+        Input[] inputs = Input.values();
+
+        while (_data.hasRemaining()) {
+            tick += this.readDelta();
+            while (game.getTicks() < tick && !game.isGameOver()) {
+                game.tick();
+            }
+
+            int code = _data.get() & 0xff;
+            if (code == ReplayWriter.END) {
+                return game;
+            }
+            if (code >= inputs.length) {
+                throw new IOException("Unknown input " + code + " in replay");
+            }
+            game.input(inputs[code]);
+        }
+        throw new IOException("Replay ends without an end record");
+    }
+
+    /**
+     * Reads a tick difference stored as a variable length number.
+     */
+    private int readDelta() {
+        int delta = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = _data.get();
+            delta |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return delta;
+    }
+
+    /**
+     * Plays back every replay file named on the command line, or every .replay
+     * file in a directory named on the command line, as fast as possible. Prints
+     * the result of each game and how many games and ticks were played per
+     * second.
+     */
+    public static void main(String[] argv) throws IOException {
+        long games = 0;
+        long ticks = 0;
+        long start = System.nanoTime();
+
+        for (String arg: argv) {
+            File file = new File(arg);
+            File[] files = file.isDirectory() ? file.listFiles((dir, name) -> name.endsWith(".replay")) : new File[] { file };
+            if (files == null) {
+                continue;
+            }
+            for (File replay: files) {
+                Game game = new ReplayReader(replay.toPath()).play();
+                System.out.println(replay.getName() + ": " + game.getPiecesPlaced() + " pieces, "
+                        + game.getLinesCleared() + " lines, " + game.getTicks() + " ticks");
+                games++;
+                ticks += game.getTicks();
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d games in %.3f s (%.0f games/s, %.0f ticks/s)%n", games, seconds, games / seconds, ticks / seconds);
+    }
+}
@@ -0,0 +1,111 @@
+package tetris;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records a game to a file as it is played so it can be played back later by a
+ * ReplayReader. Since a Game with the same seed always gets the same pieces, a
+ * replay only needs the seed, the size of the board, the gravity, lock delay
+ * and starting level, and every input along with the tick it happened on. Ticks
+ * are stored as the difference from the previous input in a variable length
+ * number, so most inputs take two bytes. Writes go into a buffer that is only
+ * written out to the file when it fills up or the replay is closed.
+ *
+ * The file is the int MAGIC, a version byte, the seed as a long and the
+ * gravity, lock delay and starting level as ints, with a starting level of 0
+ * when the gravity does not follow the level, and the playable rows and columns
+ * of the board as ints, then one record per input: the tick difference and the
+ * input's ordinal. The last record has END as its code and the difference to
+ * the tick the game stopped on.
+ */
+public class ReplayWriter {
+    public static final int MAGIC = 0x54525059;
+    public static final byte VERSION = 4;
+    public static final int END = 0xff;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private FileChannel _channel;
+    private ByteBuffer _buffer;
+    private int _lastTick;
+    private boolean _closed;
+
+    /**
+     * Creates the replay file, replacing any file already at the path, and
+     * writes the header with the seed, gravity, lock delay, starting level and
+     * board size of the game being recorded.
+     */
+    public ReplayWriter(Path path, Game game) throws IOException {
+        _channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        _buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        _buffer.putInt(MAGIC);
+        _buffer.put(VERSION);
+        _buffer.putLong(game.getGenerator().getSeed());
+        _buffer.putInt(game.getGravity());
+        _buffer.putInt(game.getLockDelay());
+        _buffer.putInt(game.hasLevelGravity() ? game.getStartLevel() : 0);
+        _buffer.putInt(game.getBoard().getHeight() - 2 * Constants.BORDER);
+        _buffer.putInt(game.getBoard().getWidth() - 2 * Constants.BORDER);
+    }
+
+    /**
+     * Adds an input to the replay. Takes the tick of the game when the input was
+     * applied, which must not be before the tick of the last input.
+     */
+    public synchronized void record(int tick, Input input) throws IOException {
+        this.writeRecord(tick, input.ordinal());
+    }
+
+    /**
+     * Ends the replay at the tick the game stopped on, writes out whatever is
+     * left in the buffer and closes the file. Does nothing if it is already
+     * closed.
+     */
+    public synchronized void close(int tick) throws IOException {
+        if (_closed) {
+            return;
+        }
+        this.writeRecord(tick, END);
+        this.flush();
+        _channel.close();
+        _closed = true;
+    }
+
+    /**
+     * Writes one record into the buffer, first writing out the buffer if there
+     * might not be room for it.
+     */
+    private void writeRecord(int tick, int code) throws IOException {
+        if (_closed) {
+            throw new IOException("Replay is already closed");
+        }
+        if (_buffer.remaining() < 6) {
+            this.flush();
+        }
+
+        int delta = tick - _lastTick;
+        _lastTick = tick;
+        while ((delta & ~0x7f) != 0) {
+            _buffer.put((byte) (delta & 0x7f | 0x80));
+            delta >>>= 7;
+        }
+        _buffer.put((byte) delta);
+        _buffer.put((byte) code);
+    }
+
+    /**
+     * Writes everything in the buffer out to the file and empties it.
+     */
+    private void flush() throws IOException {
+        _buffer.flip();
+        while (_buffer.hasRemaining()) {
+            _channel.write(_buffer);
+        }
+        _buffer.clear();
+    }
+}
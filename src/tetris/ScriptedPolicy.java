@@ -0,0 +1,60 @@
+package tetris;
+
+/**
+ * Plays a fixed script of moves, one letter per Input: L for left, R for right,
+ * D for soft drop, H for hard drop and U for rotate. Each call to play() runs
+ * the script from where the last call stopped, wrapping around at the end,
+ * until the current piece locks. A script without an H still locks every piece
+ * through soft drops.
+ */
+public class ScriptedPolicy implements InputPolicy {
+    private Input[] _script;
+    private int _next;
+
+    /**
+     * Takes the script as a string of move letters.
+     */
+    public ScriptedPolicy(String script) {
+        if (script.isEmpty()) {
+            throw new IllegalArgumentException("Script has no moves");
+        }
+
+        _script = new Input[script.length()];
+        for (int i = 0; i < script.length(); i++) {
+            _script[i] = this.parse(script.charAt(i));
+        }
+    }
+
+    /**
+     * Returns the Input for a letter of the script.
+     */
+    private Input parse(char letter) {
+        switch (letter) {
+            case 'L':
+                return Input.LEFT;
+            case 'R':
+                return Input.RIGHT;
+            case 'D':
+                return Input.SOFT_DROP;
+            case 'H':
+                return Input.HARD_DROP;
+            case 'U':
+                return Input.ROTATE;
+            default:
+                throw new IllegalArgumentException("Unknown move '" + letter + "' in script (expected L, R, D, H or U)");
+        }
+    }
+
+    @Override
+    public void play(Game game) {
+        int pieces = game.getPiecesPlaced();
+        while (game.getPiecesPlaced() == pieces && !game.isGameOver()) {
+            game.input(_script[_next]);
+            _next = (_next + 1) % _script.length;
+            // a script of only sideways moves still needs gravity to finish
+            if (_next == 0 && game.getPiecesPlaced() == pieces) {
+                game.tick();
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package tetris;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Options the game is started with, read from the named command line parameters
+ * given to App, for example --renderer=canvas. Anything left out keeps its
+ * default value.
+ */
+public class Settings {
+    private boolean _useCanvas;
+    private String _replayDirectory;
+    private int _botDepth;
+    private String _weightsFile;
+    private String _saveFile;
+    private int _gravity;
+    private int _startLevel;
+    private int _lockDelay;
+    private int _das;
+    private int _arr;
+    private int _rows;
+    private int _cols;
+
+    /**
+     * Creates the default settings.
+     */
+    public Settings() {
+        _useCanvas = false;
+        _replayDirectory = "replays";
+        _botDepth = 0;
+        _weightsFile = null;
+        _saveFile = "tetris.save";
+        _gravity = 0;
+        _startLevel = 1;
+        _lockDelay = Constants.LOCK_DELAY_FRAMES;
+        _das = Constants.DAS_FRAMES;
+        _arr = Constants.ARR_FRAMES;
+        _rows = Constants.BOARD_ROWS;
+        _cols = Constants.BOARD_COLS;
+    }
+
+    /**
+     * Reads the settings from named parameters, the values given as --name=value
+     * on the command line.
+     */
+    public Settings(Map<String, String> parameters) {
+        this();
+        String renderer = parameters.get("renderer");
+        if (renderer != null) {
+            if (renderer.equals("canvas")) {
+                _useCanvas = true;
+            }
+            else if (!renderer.equals("nodes")) {
+                throw new IllegalArgumentException("Unknown renderer: " + renderer + " (expected canvas or nodes)");
+            }
+        }
+
+        String replays = parameters.get("replays");
+        if (replays != null) {
+            _replayDirectory = replays.equals("off") ? null : replays;
+        }
+
+        String bot = parameters.get("bot");
+        if (bot != null) {
+            _botDepth = Integer.parseInt(bot);
+        }
+
+        _weightsFile = parameters.get("weights");
+        _saveFile = parameters.getOrDefault("save", _saveFile);
+
+        String gravity = parameters.get("gravity");
+        if (gravity != null) {
+            _gravity = (int) Math.round(Double.parseDouble(gravity) * Constants.GRAVITY_ONE);
+        }
+        _startLevel = Integer.parseInt(parameters.getOrDefault("level", Integer.toString(_startLevel)));
+        if (_startLevel < 1) {
+            throw new IllegalArgumentException("Level must be at least 1: " + _startLevel);
+        }
+        _lockDelay = Integer.parseInt(parameters.getOrDefault("lock-delay", Integer.toString(_lockDelay)));
+        _das = Integer.parseInt(parameters.getOrDefault("das", Integer.toString(_das)));
+        _arr = Integer.parseInt(parameters.getOrDefault("arr", Integer.toString(_arr)));
+        _rows = Integer.parseInt(parameters.getOrDefault("rows", Integer.toString(_rows)));
+        _cols = Integer.parseInt(parameters.getOrDefault("cols", Integer.toString(_cols)));
+        if (_rows < Constants.MIN_BOARD_ROWS || _cols < Constants.MIN_BOARD_COLS) {
+            throw new IllegalArgumentException("Board must be at least " + Constants.MIN_BOARD_COLS + "x"
+                    + Constants.MIN_BOARD_ROWS + ": " + _cols + "x" + _rows);
+        }
+    }
+
+    /**
+     * Splits command line arguments of the form --name=value into a map from
+     * names to values, for the programs that do not start through JavaFX.
+     */
+    public static Map<String, String> parseArguments(String[] argv) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String arg: argv) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            parameters.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        return parameters;
+    }
+
+    /**
+     * Returns whether the game is drawn on a single canvas instead of with a
+     * node for every square. Boards too big to show whole are always drawn on
+     * a canvas, which only covers the part in view.
+     */
+    public boolean useCanvas() {
+        return _useCanvas || _rows > Constants.VIEW_ROWS || _cols > Constants.VIEW_COLS;
+    }
+
+    /**
+     * Returns the number of playable rows on the board.
+     */
+    public int getRows() {
+        return _rows;
+    }
+
+    /**
+     * Returns the number of playable columns on the board.
+     */
+    public int getCols() {
+        return _cols;
+    }
+
+    /**
+     * Returns how many rows of the board are shown at once, counting the
+     * border.
+     */
+    public int getViewRows() {
+        return Math.min(_rows, Constants.VIEW_ROWS) + 2 * Constants.BORDER;
+    }
+
+    /**
+     * Returns how many columns of the board are shown at once, counting the
+     * border.
+     */
+    public int getViewCols() {
+        return Math.min(_cols, Constants.VIEW_COLS) + 2 * Constants.BORDER;
+    }
+
+    /**
+     * Returns how many pieces ahead the Bot looks when it plays the game, or 0
+     * if the game is played from the keyboard.
+     */
+    public int getBotDepth() {
+        return _botDepth;
+    }
+
+    /**
+     * Returns the file of weights saved by Tuner that the Bot plays with, or
+     * null if it plays with the default weights.
+     */
+    public String getWeightsFile() {
+        return _weightsFile;
+    }
+
+    /**
+     * Returns how fast pieces fall, in 1/Constants.GRAVITY_ONE rows per frame,
+     * or 0 if gravity follows the level.
+     */
+    public int getGravity() {
+        return _gravity;
+    }
+
+    /**
+     * Returns the level the game starts at.
+     */
+    public int getStartLevel() {
+        return _startLevel;
+    }
+
+    /**
+     * Returns how many frames a piece can rest on the stack before it locks.
+     */
+    public int getLockDelay() {
+        return _lockDelay;
+    }
+
+    /**
+     * Returns how many frames a sideways key is held before it starts to
+     * repeat.
+     */
+    public int getDas() {
+        return _das;
+    }
+
+    /**
+     * Returns how many frames there are between repeats of a held sideways
+     * key, or 0 to move straight to the wall.
+     */
+    public int getArr() {
+        return _arr;
+    }
+
+    /**
+     * Returns the file the game is saved to and loaded from.
+     */
+    public String getSaveFile() {
+        return _saveFile;
+    }
+
+    /**
+     * Returns the directory every game is recorded into as a replay, or null if
+     * games are not recorded.
+     */
+    public String getReplayDirectory() {
+        return _replayDirectory;
+    }
+}
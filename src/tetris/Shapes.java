@@ -0,0 +1,141 @@
+package tetris;
+
+/**
+ * Tables of every orientation of the 7 pieces in Constants, worked out once
+ * when the class is loaded and shared by every game. A piece's location is the
+ * point where it spawns, in the middle column of the board at
+ * Constants.PIECE_ORIGIN_Y, and each orientation is stored as offsets of its
+ * squares from that point. Each orientation is also packed into one bitmask per
+ * row so the Board can test a whole row of the piece with a single AND.
+ *
+ * Orientations are numbered 0 to 3, with 0 being the configuration in Constants
+ * and each one after it turned 90 degrees counter clockwise around the piece's
+ * second square. The O piece has the same squares in every orientation. Tables
+ * are indexed by index(type, orientation).
+ */
+public final class Shapes {
+    public static final int ORIENTATIONS = 4;
+    public static final int SQUARES = 4;
+    public static final int KICKS = 5;
+
+    // offsets of each square, SQUARES entries per orientation
+    public static final int[] DX = new int[Constants.NUM_PIECE_TYPES * ORIENTATIONS * SQUARES];
+    public static final int[] DY = new int[DX.length];
+
+    // bounding box of each orientation
+    public static final int[] MIN_DX = new int[Constants.NUM_PIECE_TYPES * ORIENTATIONS];
+    public static final int[] MIN_DY = new int[MIN_DX.length];
+    public static final int[] WIDTH = new int[MIN_DX.length];
+    public static final int[] HEIGHT = new int[MIN_DX.length];
+
+    // one mask per row of the bounding box, bit i is column MIN_DX + i
+    public static final int[] ROW_MASKS = new int[MIN_DX.length * SQUARES];
+
+    // lowest offset in each column of the bounding box, used to find how far a
+    // piece can drop
+    public static final int[] BOTTOM = new int[MIN_DX.length * SQUARES];
+
+    // offsets tried in order when turning out of each orientation, the standard
+    // wall kicks with rows counted downwards
+    public static final int[] KICK_X = new int[MIN_DX.length * KICKS];
+    public static final int[] KICK_Y = new int[KICK_X.length];
+
+    // standard kicks for turning counter clockwise out of each orientation, as
+    // x, y pairs with y counting upwards
+    private static final int[][] JLSTZ_KICKS = {
+            {0, 0, 1, 0, 1, 1, 0, -2, 1, -2},
+            {0, 0, -1, 0, -1, -1, 0, 2, -1, 2},
+            {0, 0, -1, 0, -1, 1, 0, -2, -1, -2},
+            {0, 0, 1, 0, 1, -1, 0, 2, 1, 2} };
+    private static final int[][] I_KICKS = {
+            {0, 0, -1, 0, 2, 0, -1, 2, 2, -1},
+            {0, 0, -2, 0, 1, 0, -2, -1, 1, 2},
+            {0, 0, 1, 0, -2, 0, 1, -2, -2, 1},
+            {0, 0, 2, 0, -1, 0, 2, 1, -1, -2} };
+
+    static {
+        for (int type = 0; type < Constants.NUM_PIECE_TYPES; type++) {
+            int[][] coords = Constants.PIECE_COORDS[type];
+            boolean isSquare = coords == Constants.O_PIECE_COORDS;
+            int pivotX = coords[1][0];
+            int pivotY = coords[1][1];
+
+            for (int orientation = 0; orientation < ORIENTATIONS; orientation++) {
+                int index = index(type, orientation);
+                int turns = isSquare ? 0 : orientation;
+
+                for (int i = 0; i < SQUARES; i++) {
+                    int x = coords[i][0] - pivotX;
+                    int y = coords[i][1] - pivotY;
+                    // each turn counter clockwise takes (x, y) to (y, -x)
+                    for (int j = 0; j < turns; j++) {
+                        int oldX = x;
+                        x = y;
+                        y = -oldX;
+                    }
+                    DX[index * SQUARES + i] = pivotX + x;
+                    DY[index * SQUARES + i] = pivotY + y;
+                }
+
+                makeMasks(index);
+                makeKicks(index, isSquare ? null : (type == 0 ? I_KICKS : JLSTZ_KICKS)[orientation]);
+            }
+        }
+    }
+
+    private Shapes() {
+    }
+
+    /**
+     * Returns the index of the orientation of the piece type into the tables.
+     */
+    public static int index(int type, int orientation) {
+        return type * ORIENTATIONS + orientation;
+    }
+
+    /**
+     * Works out the bounding box, row masks and bottom of each column of an
+     * orientation from its offsets.
+     */
+    private static void makeMasks(int index) {
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < SQUARES; i++) {
+            minX = Math.min(minX, DX[index * SQUARES + i]);
+            minY = Math.min(minY, DY[index * SQUARES + i]);
+            maxX = Math.max(maxX, DX[index * SQUARES + i]);
+            maxY = Math.max(maxY, DY[index * SQUARES + i]);
+        }
+
+        MIN_DX[index] = minX;
+        MIN_DY[index] = minY;
+        WIDTH[index] = maxX - minX + 1;
+        HEIGHT[index] = maxY - minY + 1;
+        for (int i = 0; i < SQUARES; i++) {
+            BOTTOM[index * SQUARES + i] = Integer.MIN_VALUE;
+        }
+        for (int i = 0; i < SQUARES; i++) {
+            int col = DX[index * SQUARES + i] - minX;
+            int row = DY[index * SQUARES + i];
+            ROW_MASKS[index * SQUARES + row - minY] |= 1 << col;
+            BOTTOM[index * SQUARES + col] = Math.max(BOTTOM[index * SQUARES + col], row);
+        }
+    }
+
+    /**
+     * Copies the kick offsets for turning out of an orientation into the tables.
+     * Takes null for a piece that does not need kicks, which only tries turning
+     * in place.
+     */
+    private static void makeKicks(int index, int[] kicks) {
+        for (int i = 0; i < KICKS; i++) {
+            if (kicks != null) {
+                KICK_X[index * KICKS + i] = kicks[2 * i];
+                // the standard table counts up as positive, rows count downwards
+                KICK_Y[index * KICKS + i] = -kicks[2 * i + 1];
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package tetris;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays many games without a display, in parallel, and prints how fast they ran
+ * and how well they went. Every game has its own Game, its own InputPolicy and
+ * its own seed, the first seed plus the game's number, so any game can be
+ * played again on its own and the whole run gives the same results however
+ * many threads it is spread over. Bots share one TranspositionTable, which
+ * only holds scores every game would work out the same for itself.
+ *
+ * Run with java -cp tetris.jar tetris.Simulator followed by any of
+ * --games=N, --threads=N or --threads=virtual, --seed=S, --policy=random,
+ * --policy=script:moves or --policy=bot:depth, --max-pieces=N, --rows=N
+ * and --cols=N for the size of the board, and --export=file to write a row
+ * for every piece placed to a DatasetWriter file.
+ */
+public class Simulator {
+    private String _policy;
+    private long _seed;
+    private int _maxPieces;
+    private int _rows;
+    private int _cols;
+    private DatasetWriter _export;
+    // shared by the bots of every game, or null for other policies
+    private TranspositionTable _table;
+
+    /**
+     * Takes the description of the policy every game is played with (see
+     * InputPolicy.create), the seed of the first game and how many pieces a
+     * game may place before it is stopped. Games are played on a board of the
+     * standard size.
+     */
+    public Simulator(String policy, long seed, int maxPieces) {
+        this(policy, seed, maxPieces, Constants.BOARD_ROWS, Constants.BOARD_COLS);
+    }
+
+    /**
+     * Takes the same as above along with the playable rows and columns of the
+     * board every game is played on. Bots play every game with the same
+     * weights, so they share one TranspositionTable.
+     */
+    public Simulator(String policy, long seed, int maxPieces, int rows, int cols) {
+        _policy = policy;
+        _seed = seed;
+        _maxPieces = maxPieces;
+        _rows = rows;
+        _cols = cols;
+        if (policy.startsWith("bot:")) {
+            _table = new TranspositionTable(Constants.TRANSPOSITION_ENTRIES);
+        }
+    }
+
+    /**
+     * Records every piece placed in the games played from now on as a row of
+     * the writer, which must have PlacementRecorder's columns for the width of
+     * the board.
+     */
+    public void setExport(DatasetWriter export) {
+        _export = export;
+    }
+
+    /**
+     * Plays one game to the end, or until it has placed the most pieces
+     * allowed, and returns its result. Safe to call from many threads at once.
+     */
+    public Result play(int number) throws IOException {
+        long seed = _seed + number;
+        Game game = new Game(seed, _rows, _cols);
+        InputPolicy policy = InputPolicy.create(_policy, seed, _table);
+        PlacementRecorder recorder = _export == null ? null : new PlacementRecorder(game, number, _export);
+        while (!game.isGameOver() && game.getPiecesPlaced() < _maxPieces) {
+            policy.play(game);
+        }
+        if (recorder != null) {
+            recorder.flush();
+        }
+        return new Result(seed, game);
+    }
+
+    /**
+     * Plays the games numbered 0 to count - 1 on the executor and returns their
+     * results in order.
+     */
+    public Result[] playAll(int count, ExecutorService executor) throws InterruptedException, ExecutionException {
+        List<Future<Result>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int number = i;
+            futures.add(executor.submit(() -> this.play(number)));
+        }
+
+        Result[] results = new Result[count];
+        for (int i = 0; i < count; i++) {
+            results[i] = futures.get(i).get();
+        }
+        return results;
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread for every game, or null
+     * if this Java has no virtual threads. Looked up by reflection so the game
+     * still builds and runs on older versions of Java.
+     */
+    private static ExecutorService virtualThreads() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the value at a fraction of the way through a sorted array.
+     */
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(fraction * (sorted.length - 1)))];
+    }
+
+    /**
+     * Prints the smallest value, the 10th, 50th and 90th percentiles, the
+     * largest value and the mean of one measure across all games.
+     */
+    private static void printDistribution(String name, long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long value: sorted) {
+            total += value;
+        }
+        System.out.printf("%-7s min %d, p10 %d, p50 %d, p90 %d, max %d, mean %.1f, total %d%n", name, sorted[0],
+                percentile(sorted, 0.1), percentile(sorted, 0.5), percentile(sorted, 0.9), sorted[sorted.length - 1],
+                (double) total / sorted.length, total);
+    }
+
+    /**
+     * Reads the options, plays the games and prints games and pieces per second
+     * followed by how long the games survived, how many lines they cleared and
+     * what they scored.
+     */
+    public static void main(String[] argv) throws InterruptedException, ExecutionException, IOException {
+        Map<String, String> options = Settings.parseArguments(argv);
+
+        int games = Integer.parseInt(options.getOrDefault("games", "1000"));
+        String threads = options.getOrDefault("threads", Integer.toString(Runtime.getRuntime().availableProcessors()));
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        String policy = options.getOrDefault("policy", "random");
+        int maxPieces = Integer.parseInt(options.getOrDefault("max-pieces", "100000"));
+        int rows = Integer.parseInt(options.getOrDefault("rows", Integer.toString(Constants.BOARD_ROWS)));
+        int cols = Integer.parseInt(options.getOrDefault("cols", Integer.toString(Constants.BOARD_COLS)));
+        String export = options.get("export");
+
+        ExecutorService executor = null;
+        if (threads.equals("virtual")) {
+            executor = virtualThreads();
+            if (executor == null) {
+                System.out.println("Virtual threads need Java 21, using a thread per core instead");
+                threads = Integer.toString(Runtime.getRuntime().availableProcessors());
+            }
+        }
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(Integer.parseInt(threads));
+        }
+
+        Simulator simulator = new Simulator(policy, seed, maxPieces, rows, cols);
+        DatasetWriter writer = null;
+        if (export != null) {
+            writer = new DatasetWriter(Paths.get(export), PlacementRecorder.columns(cols));
+            simulator.setExport(writer);
+        }
+        long start = System.nanoTime();
+        Result[] results;
+        boolean played = false;
+        try {
+            results = simulator.playAll(games, executor);
+            played = true;
+        }
+        finally {
+            // after a failure, games not yet started are dropped, and the ones
+            // still running must finish with the writer before it is closed
+            if (played) {
+                executor.shutdown();
+            }
+            else {
+                executor.shutdownNow();
+            }
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            if (writer != null) {
+                writer.close();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long[] pieces = new long[games];
+        long[] lines = new long[games];
+        long[] scores = new long[games];
+        long totalPieces = 0;
+        for (int i = 0; i < games; i++) {
+            pieces[i] = results[i].getPieces();
+            lines[i] = results[i].getLines();
+            scores[i] = results[i].getScore();
+            totalPieces += pieces[i];
+        }
+
+        System.out.printf("%d games of %s on %dx%d boards on %s threads in %.3f s (%.0f games/s, %.0f pieces/s)%n", games, policy, cols,
+                rows, threads, seconds, games / seconds, totalPieces / seconds);
+        if (writer != null) {
+            Path path = Paths.get(export);
+            System.out.printf("Wrote %d rows to %s (%d bytes, %.1f bytes a row)%n", writer.getRowCount(), path,
+                    Files.size(path), (double) Files.size(path) / Math.max(1, writer.getRowCount()));
+        }
+        if (games > 0) {
+            printDistribution("pieces", pieces);
+            printDistribution("lines", lines);
+            printDistribution("score", scores);
+        }
+    }
+
+    /**
+     * How one game ended: its seed, how many pieces it placed, lines it
+     * cleared, points it scored and ticks it ran for.
+     */
+    public static class Result {
+        private long _seed;
+        private int _pieces;
+        private int _lines;
+        private long _score;
+        private int _ticks;
+
+        /**
+         * Copies the results out of a finished Game.
+         */
+        public Result(long seed, Game game) {
+            _seed = seed;
+            _pieces = game.getPiecesPlaced();
+            _lines = game.getLinesCleared();
+            _score = game.getScore();
+            _ticks = game.getTicks();
+        }
+
+        /**
+         * Returns the seed the game was played with.
+         */
+        public long getSeed() {
+            return _seed;
+        }
+
+        /**
+         * Returns how many pieces the game placed.
+         */
+        public int getPieces() {
+            return _pieces;
+        }
+
+        /**
+         * Returns how many lines the game cleared.
+         */
+        public int getLines() {
+            return _lines;
+        }
+
+        /**
+         * Returns the game's score.
+         */
+        public long getScore() {
+            return _score;
+        }
+
+        /**
+         * Returns how many ticks the game ran for.
+         */
+        public int getTicks() {
+            return _ticks;
+        }
+    }
+}
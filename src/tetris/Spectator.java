@@ -0,0 +1,73 @@
+package tetris;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Follows a SpectatorFeed into its own MirrorBoard, for a renderer or anything
+ * else that watches a game without playing it. Reads the feed whenever it is
+ * polled, from any thread, and jumps to the latest keyframe if it fell so far
+ * behind that the frames it missed are gone.
+ */
+public class Spectator {
+    private SpectatorFeed _feed;
+    private MirrorBoard _board;
+    private ByteBuffer _frame;
+    // offset of the next frame to read, -1 to start at the latest keyframe
+    private long _next;
+    private long _frames;
+    private long _jumps;
+
+    /**
+     * Starts watching the feed from its latest keyframe.
+     */
+    public Spectator(SpectatorFeed feed) {
+        _feed = feed;
+        _board = new MirrorBoard(feed.getRows(), feed.getCols());
+        _frame = ByteBuffer.allocate(feed.getMaxFrameSize());
+        _next = -1;
+    }
+
+    /**
+     * Applies up to the number of frames published since the last poll to the
+     * board and returns how many were applied.
+     */
+    public int poll(int maxFrames) {
+        int applied = 0;
+        while (applied < maxFrames) {
+            long at = _feed.read(_next, _frame);
+            if (at < 0) {
+                break;
+            }
+            if (_next >= 0 && at != _next) {
+                _jumps++;
+            }
+            _next = at + SpectatorFeed.RECORD_HEADER + _frame.remaining();
+            _board.apply(_frame);
+            applied++;
+        }
+        _frames += applied;
+        return applied;
+    }
+
+    /**
+     * Returns the board as of the last frame applied.
+     */
+    public MirrorBoard getBoard() {
+        return _board;
+    }
+
+    /**
+     * Returns how many frames have been applied.
+     */
+    public long getFrames() {
+        return _frames;
+    }
+
+    /**
+     * Returns how many times the spectator fell behind and jumped to a
+     * keyframe.
+     */
+    public long getJumps() {
+        return _jumps;
+    }
+}
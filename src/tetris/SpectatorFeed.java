@@ -0,0 +1,348 @@
+package tetris;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.Map;
+
+/**
+ * Publishes a Game for any number of spectators as the frames of a BoardDelta:
+ * each frame holds only the rows that changed as bits, the piece, the waiting
+ * garbage and the rows cleared since the frame before, with a keyframe of the
+ * whole stack every so often. Frames go into a ring buffer of a fixed size
+ * that spectators read at their own pace, so publishing costs the same however
+ * many spectators there are and the game never waits for any of them. A
+ * spectator that falls so far behind that its next frame has been written
+ * over jumps to the latest keyframe instead, which the feed keeps in the ring
+ * by writing a new keyframe before it would be written over.
+ *
+ * A frame is published at the end of every tick in which something changed
+ * and when the game ends. A game played without ticks, such as by the Bot,
+ * is published by calling publish() between inputs.
+ *
+ * Each frame is kept in the ring as its length as an int followed by the
+ * frame. Frames are found by their offset, counted in bytes from the start
+ * of the feed, which only goes up.
+ *
+ * Run with java -cp tetris.jar tetris.SpectatorFeed followed by any of
+ * --spectators=N, --policy=P, --seed=S, --max-pieces=N, --keyframe=N,
+ * --buffer=N and --replay=file to play a game, or a replay, to a crowd of
+ * spectators, some of them slow, and print how much the feed sent.
+ */
+public class SpectatorFeed implements GameListener {
+    // bytes before each frame in the ring
+    public static final int RECORD_HEADER = 4;
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+    // frames between keyframes
+    public static final int DEFAULT_KEYFRAME_FRAMES = Constants.FRAME_RATE;
+
+    private Game _game;
+    private BoardDelta _delta;
+    private int _rows;
+    private int _cols;
+    private byte[] _ring;
+    private ByteBuffer _frame;
+    private int _keyframeFrames;
+    // offset of the next frame to be written
+    private long _head;
+    // offset of the latest keyframe, -1 before the first
+    private long _keyframe;
+    private int _sinceKeyframe;
+    private boolean _restored;
+    private long _frames;
+    private long _keyframes;
+
+    /**
+     * Starts publishing the game with the default buffer size and keyframe
+     * interval.
+     */
+    public SpectatorFeed(Game game) {
+        this(game, DEFAULT_CAPACITY, DEFAULT_KEYFRAME_FRAMES);
+    }
+
+    /**
+     * Starts publishing the game into a ring of the number of bytes, with a
+     * keyframe at least every number of frames given. Throws an
+     * IllegalArgumentException if the ring cannot hold two of the largest
+     * frames.
+     */
+    public SpectatorFeed(Game game, int capacity, int keyframeFrames) {
+        _game = game;
+        _delta = new BoardDelta(game);
+        _rows = game.getBoard().getHeight() - 2 * Constants.BORDER;
+        _cols = game.getBoard().getWidth() - 2 * Constants.BORDER;
+        _frame = ByteBuffer.allocate(_delta.maxFrameSize());
+        if (capacity < 2L * (RECORD_HEADER + _frame.capacity())) {
+            throw new IllegalArgumentException("A feed of a " + _cols + "x" + _rows + " board needs at least "
+                    + 2L * (RECORD_HEADER + _frame.capacity()) + " bytes");
+        }
+        _ring = new byte[capacity];
+        _keyframeFrames = Math.max(1, keyframeFrames);
+        _keyframe = -1;
+        _game.addListener(this);
+    }
+
+    /**
+     * Returns the number of playable rows of the game's board.
+     */
+    public int getRows() {
+        return _rows;
+    }
+
+    /**
+     * Returns the number of playable columns of the game's board.
+     */
+    public int getCols() {
+        return _cols;
+    }
+
+    /**
+     * Returns the most bytes a frame can take, the size of buffer read needs.
+     */
+    public int getMaxFrameSize() {
+        return _frame.capacity();
+    }
+
+    /**
+     * Returns how many bytes have been published.
+     */
+    public synchronized long getBytesPublished() {
+        return _head;
+    }
+
+    /**
+     * Returns how many frames have been published, keyframes included.
+     */
+    public synchronized long getFrames() {
+        return _frames;
+    }
+
+    /**
+     * Returns how many keyframes have been published.
+     */
+    public synchronized long getKeyframes() {
+        return _keyframes;
+    }
+
+    /**
+     * Publishes what changed in the tick.
+     */
+    @Override
+    public void ticked(int tick) {
+        this.publish();
+    }
+
+    /**
+     * Publishes the end of the game.
+     */
+    @Override
+    public void gameOver() {
+        this.publish();
+    }
+
+    /**
+     * Makes the next frame a keyframe, since the whole game has changed.
+     */
+    @Override
+    public void gameRestored() {
+        _restored = true;
+    }
+
+    /**
+     * Writes a frame of what changed since the last one into the ring, or a
+     * keyframe if there has not been one yet, the interval has passed or the
+     * frame would write over the latest keyframe. Does nothing if nothing
+     * changed and no keyframe is due.
+     */
+    public synchronized void publish() {
+        boolean keyframe = _keyframe < 0 || _restored || _sinceKeyframe >= _keyframeFrames
+                || _head + RECORD_HEADER + _delta.frameSize(false) - _ring.length > _keyframe;
+        if (!keyframe && !_delta.hasChanges()) {
+            return;
+        }
+
+        _frame.clear();
+        _delta.writeFrame(_frame, keyframe);
+        _frame.flip();
+        _delta.clear();
+
+        long start = _head;
+        this.putInt(_frame.remaining());
+        this.put(_frame.array(), 0, _frame.remaining());
+        _frames++;
+        if (keyframe) {
+            _keyframe = start;
+            _keyframes++;
+            _sinceKeyframe = 0;
+            _restored = false;
+        }
+        else {
+            _sinceKeyframe++;
+        }
+    }
+
+    /**
+     * Copies the frame at the offset into the buffer, ready to be read by
+     * MirrorBoard.apply, and returns the offset of the frame copied. The next
+     * frame starts RECORD_HEADER bytes plus the frame's length after it. If the
+     * frame at the offset has been written over, or the offset is negative,
+     * copies the latest keyframe instead. Returns -1 and leaves the buffer
+     * empty if no frame has been published at the offset yet.
+     */
+    public synchronized long read(long offset, ByteBuffer frame) {
+        if (offset > _head) {
+            throw new IllegalArgumentException("Offset " + offset + " is past the end of the feed");
+        }
+        frame.clear();
+        if (offset < 0 || offset < _head - _ring.length) {
+            offset = _keyframe;
+        }
+        if (offset < 0 || offset == _head) {
+            frame.flip();
+            return -1;
+        }
+
+        int length = this.getInt(offset);
+        this.get(offset + RECORD_HEADER, frame.array(), frame.arrayOffset(), length);
+        frame.limit(length);
+        return offset;
+    }
+
+    /**
+     * Writes an int at the head of the ring.
+     */
+    private void putInt(int value) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            _ring[(int) (_head++ % _ring.length)] = (byte) (value >>> shift);
+        }
+    }
+
+    /**
+     * Writes bytes at the head of the ring, wrapping around at its end.
+     */
+    private void put(byte[] bytes, int from, int length) {
+        int at = (int) (_head % _ring.length);
+        int first = Math.min(length, _ring.length - at);
+        System.arraycopy(bytes, from, _ring, at, first);
+        System.arraycopy(bytes, from + first, _ring, 0, length - first);
+        _head += length;
+    }
+
+    /**
+     * Reads the int at the offset of the ring.
+     */
+    private int getInt(long offset) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = value << 8 | _ring[(int) ((offset + i) % _ring.length)] & 0xff;
+        }
+        return value;
+    }
+
+    /**
+     * Reads bytes from the offset of the ring, wrapping around at its end.
+     */
+    private void get(long offset, byte[] bytes, int to, int length) {
+        int at = (int) (offset % _ring.length);
+        int first = Math.min(length, _ring.length - at);
+        System.arraycopy(_ring, at, bytes, to, first);
+        System.arraycopy(_ring, 0, bytes, to + first, length - first);
+    }
+
+    /**
+     * Plays a game, or a replay, to spectators that catch up after every
+     * piece, the first every piece, the second every other piece, the third
+     * every fourth piece and so on, so the slow ones have to jump. At the end
+     * every spectator catches up and is checked against the game, and the
+     * frames and bytes published are printed.
+     */
+    public static void main(String[] argv) throws IOException {
+        Map<String, String> options = Settings.parseArguments(argv);
+        int count = Integer.parseInt(options.getOrDefault("spectators", "8"));
+        String policyName = options.getOrDefault("policy", "random");
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        int maxPieces = Integer.parseInt(options.getOrDefault("max-pieces", "10000"));
+        int keyframeFrames = Integer.parseInt(options.getOrDefault("keyframe", Integer.toString(DEFAULT_KEYFRAME_FRAMES)));
+        int capacity = Integer.parseInt(options.getOrDefault("buffer", Integer.toString(DEFAULT_CAPACITY)));
+        String replay = options.get("replay");
+
+        ReplayReader reader = replay == null ? null : new ReplayReader(Paths.get(replay));
+        Game game = reader == null ? new Game(seed) : reader.createGame();
+        SpectatorFeed feed = new SpectatorFeed(game, capacity, keyframeFrames);
+        Spectator[] spectators = new Spectator[count];
+        for (int i = 0; i < count; i++) {
+            spectators[i] = new Spectator(feed);
+        }
+        game.addListener(new Audience(spectators));
+
+        long start = System.nanoTime();
+        if (reader != null) {
+            reader.play(game);
+        }
+        else {
+            InputPolicy policy = InputPolicy.create(policyName, seed);
+            while (!game.isGameOver() && game.getPiecesPlaced() < maxPieces) {
+                policy.play(game);
+                feed.publish();
+            }
+        }
+        feed.publish();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int behind = 0;
+        for (Spectator spectator: spectators) {
+            spectator.poll(Integer.MAX_VALUE);
+            MirrorBoard mirror = spectator.getBoard();
+            Piece piece = game.getPiece();
+            if (!mirror.matches(game.getBoard()) || mirror.getPieceX() != piece.getX()
+                    || mirror.getPieceY() != piece.getY() || mirror.getPieceType() != piece.getType()
+                    || mirror.isGameOver() != game.isGameOver()) {
+                behind++;
+            }
+        }
+
+        long bytes = feed.getBytesPublished();
+        System.out.printf("%d pieces, %d lines, %d ticks in %.3f s%n", game.getPiecesPlaced(), game.getLinesCleared(),
+                game.getTicks(), seconds);
+        System.out.printf("%d frames (%d keyframes), %d bytes: %.1f bytes a frame, %.1f a piece%s%n",
+                feed.getFrames(), feed.getKeyframes(), bytes, (double) bytes / Math.max(1, feed.getFrames()),
+                (double) bytes / Math.max(1, game.getPiecesPlaced()),
+                game.getTicks() > 0 ? String.format(", %.1f a tick", (double) bytes / game.getTicks()) : "");
+        for (int i = 0; i < count; i++) {
+            System.out.printf("spectator %d: %d frames, %d jumps%n", i, spectators[i].getFrames(),
+                    spectators[i].getJumps());
+        }
+        System.out.println(behind == 0 ? "every spectator matches the game" : behind + " spectators do not match the game");
+        if (behind > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Lets spectator i catch up on every 2^i-th piece.
+     */
+    private static class Audience implements GameListener {
+        private Spectator[] _spectators;
+        private long _pieces;
+
+        /**
+         * Takes the spectators to catch up.
+         */
+        public Audience(Spectator[] spectators) {
+            _spectators = spectators;
+        }
+
+        /**
+         * Catches up the spectators whose turn it is.
+         */
+        @Override
+        public void pieceSpawned(Piece piece) {
+            _pieces++;
+            for (int i = 0; i < _spectators.length; i++) {
+                if (_pieces % (1L << Math.min(i, 20)) == 0) {
+                    _spectators[i].poll(Integer.MAX_VALUE);
+                }
+            }
+        }
+    }
+}
@@ -70,10 +70,17 @@ public class Square {
     }
 
     /**
-     * Helper method to set the color of the Square. Takes the fill as a parameter
-     * but sets the same stroke for all squares.
+     * Shows or hides the Square without removing it from its pane.
      */
-    private void setColor(Color fill) {
+    public void setVisible(boolean visible) {
+        _square.setVisible(visible);
+    }
+
+    /**
+     * Sets the color of the Square. Takes the fill as a parameter but sets the
+     * same stroke for all squares.
+     */
+    public void setColor(Color fill) {
         _square.setFill(fill);
         _square.setStroke(Color.FLORALWHITE);
         _square.setStrokeType(StrokeType.INSIDE);
@@ -0,0 +1,55 @@
+package tetris;
+
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+
+/**
+ * A fixed number of Squares made once and added to the game pane hidden, so the
+ * NodeRenderer never adds or removes nodes while the game is played. A Square is
+ * taken from the pool by showing it with a location and fill, and given back by
+ * hiding it again.
+ */
+public class SquarePool {
+    private Square[] _free;
+    private int _freeCount;
+
+    /**
+     * Makes the number of Squares passed in and adds them to the game pane, all
+     * hidden and free to be taken.
+     */
+    public SquarePool(Pane gamePane, int size) {
+        _free = new Square[size];
+        for (int i = 0; i < size; i++) {
+            _free[i] = new Square(0, 0, Palette.BACKGROUND);
+            _free[i].setVisible(false);
+            gamePane.getChildren().add(_free[i].getSquare());
+        }
+        _freeCount = size;
+    }
+
+    /**
+     * Takes a free Square from the pool and shows it at the row and column with
+     * the fill passed in.
+     */
+    public Square acquire(int row, int col, Color color) {
+        if (_freeCount == 0) {
+            throw new IllegalStateException("No free squares left in the pool of " + _free.length);
+        }
+
+        Square square = _free[--_freeCount];
+        _free[_freeCount] = null;
+        square.setRow(row);
+        square.setCol(col);
+        square.setColor(color);
+        square.setVisible(true);
+        return square;
+    }
+
+    /**
+     * Hides the Square and gives it back to the pool.
+     */
+    public void release(Square square) {
+        square.setVisible(false);
+        _free[_freeCount++] = square;
+    }
+}
@@ -1,254 +1,449 @@
 package tetris;
 
-import javafx.animation.Animation;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
-import javafx.event.ActionEvent;
+import javafx.animation.AnimationTimer;
 import javafx.event.EventHandler;
 import javafx.scene.control.Label;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.Pane;
-import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
-import javafx.util.Duration;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 
 
 /**
- * Main class that handles the graphic elements and game logic. Creates random pieces
- * that move down the 2D board according to the timeline and can also be manipulated
- * with keyboard input. Checks if rows are full and clears them. Ends the game when
- * a piece hits the top.
+ * Main graphical class of the game. The rules are played out by a Game, and
+ * this class drives it with a fixed step loop and keyboard input. An
+ * AnimationTimer adds up the time between pulses and runs one step of
+ * Constants.FRAME_RATE per second for all of it, so the game runs at the same
+ * speed however the pulses are spaced. Each step drains the key events queued
+ * since the last one through an InputQueue, which handles DAS and ARR, and then
+ * ticks the Game once. The Game is drawn by a Renderer chosen in the Settings,
+ * either Squares on the game pane or a single canvas, which is told about
+ * spawns, moves, locks and cleared rows by the Game and redraws what they
+ * changed once per pulse. Boards too big for the window are drawn on the canvas
+ * through a Viewport that scrolls with the piece. Shows a message when the game
+ * is paused or over. Unless turned off in the Settings, every game is recorded
+ * as a replay. The Settings can also have a Bot play the game, which places
+ * each piece on the first step after it spawns, before gravity or the lock
+ * delay can get to it.
  */
 public class Tetris {
     private Pane _gamePane;
-    private Square[][] _board;
-    private Piece _currPiece;
+    private Game _game;
+    private Renderer _renderer;
+    private Viewport _viewport;
+    private ReplayWriter _replay;
+    private Bot _bot;
     private boolean _paused;
-    private Timeline _timeline;
+    private boolean _ended;
+    // set by the Game's events and acted on by the next update
+    private boolean _statusChanged;
+    private boolean _gameOver;
+    private boolean _botTurn;
+    private InputQueue _inputs;
+    private Consumer<Input> _applyInput;
+    private AnimationTimer _timer;
     private Label _pauseText;
+    private Label _statusText;
+    private Label _gameOverText;
+    private Path _saveFile;
+    private long _shownScore;
+    private long _pressTime;
 
     /**
-     * Sets initial state of game to unpaused, sets up KeyHandler, creates 2D array
-     * for the logical representation of the game board, and generates the first piece.
-     * Takes the game pane as a parameter to add all the Nodes to.
+     * Sets initial state of game to unpaused, sets up KeyHandler, creates the
+     * Game and the Renderer that draws it. Takes the game pane as a parameter to
+     * add all the Nodes to and the Settings the game was started with.
      */
-    public Tetris(Pane gamePane) {
+    public Tetris(Pane gamePane, Settings settings) {
         _paused = false;
         _pauseText = new Label("Game is paused. Press P to resume.");
 
         _gamePane = gamePane;
         _gamePane.addEventHandler(KeyEvent.KEY_PRESSED, new KeyHandler());
+        _gamePane.addEventHandler(KeyEvent.KEY_RELEASED, new KeyHandler());
         _gamePane.setFocusTraversable(true);
 
-        _board = new Square[Constants.BOARD_ROWS + 2 * Constants.BORDER][Constants.BOARD_COLS + 2 * Constants.BORDER];
-        this.setBoard();
+        _game = new Game(ThreadLocalRandom.current().nextLong(), settings.getRows(), settings.getCols());
+        if (settings.getGravity() > 0) {
+            _game.setGravity(settings.getGravity());
+        }
+        else {
+            _game.setStartLevel(settings.getStartLevel());
+        }
+        _game.setLockDelay(settings.getLockDelay());
+        _inputs = new InputQueue(settings.getDas(), settings.getArr(), Constants.SOFT_DROP_FRAMES, settings.getCols());
+        _applyInput = this::applyInput;
+        _viewport = new Viewport(_game.getBoard().getHeight(), _game.getBoard().getWidth(), settings.getViewRows(),
+                settings.getViewCols(), Constants.VIEW_MARGIN);
+        if (settings.useCanvas()) {
+            _renderer = new CanvasRenderer(_gamePane, _game, _viewport);
+        }
+        else {
+            _renderer = new NodeRenderer(_gamePane, _game);
+        }
+        _game.addListener(_renderer);
+        _game.addListener(new GameHandler());
+
+        _statusText = new Label();
+        _statusText.setTranslateX(Constants.SQUARE_WIDTH);
+        _statusText.setTranslateY(Constants.STATUS_Y);
+        _gamePane.getChildren().add(_statusText);
+        this.showStatus();
+
+        if (settings.getBotDepth() > 0) {
+            _bot = new Bot(this.loadWeights(settings.getWeightsFile()), settings.getBotDepth(), ForkJoinPool.commonPool());
+            _botTurn = true;
+        }
 
-        _currPiece = this.generatePiece();
+        _saveFile = Paths.get(settings.getSaveFile());
+        if (settings.getReplayDirectory() != null) {
+            this.startReplay(Paths.get(settings.getReplayDirectory()));
+        }
 
-        this.setupTimeline();
+        _timer = new FrameTimer();
+        _timer.start();
     }
 
     /**
-     * Creates Keyframe and Timeline.
+     * Reads the weights the Bot plays with from a file saved by Tuner, or
+     * returns the default weights if there is no file or it cannot be read.
      */
-    private void setupTimeline() {
-        KeyFrame kf = new KeyFrame(Duration.seconds(Constants.DURATION), new TimeHandler());
-        _timeline = new Timeline(kf);
-        _timeline.setCycleCount(Animation.INDEFINITE);
-        _timeline.play();
+    private Weights loadWeights(String file) {
+        if (file == null) {
+            return new Weights();
+        }
+
+        try {
+            return Weights.load(Paths.get(file));
+        }
+        catch (IOException e) {
+            System.err.println("Could not load weights, using the defaults: " + e.getMessage());
+            return new Weights();
+        }
     }
 
     /**
-     * Sets up the initial state of the board with the playable space being empty
-     * and the border of Squares along the sides.
+     * Starts recording the game into a new replay file in the directory. The
+     * replay is finished when the game ends or the program exits. If the file
+     * cannot be made the game is played without recording.
      */
-    private void setBoard() {
-        for (int i = 0; i < _board.length; i++) {
-            for (int j = 0; j < _board[i].length; j++) {
-                if (i < Constants.BORDER || i >= Constants.BOARD_ROWS + Constants.BORDER || j < Constants.BORDER || j >= Constants.BOARD_COLS + Constants.BORDER) {
-                    _board[i][j] = new Square(i, j, Color.BURLYWOOD);
-                    _gamePane.getChildren().add(_board[i][j].getSquare());
-                }
-            }
+    private void startReplay(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            Path path = directory.resolve("tetris-" + System.currentTimeMillis() + ".replay");
+            _replay = new ReplayWriter(path, _game);
+            Runtime.getRuntime().addShutdownHook(new Thread(this::closeReplay));
+        }
+        catch (IOException e) {
+            System.err.println("Could not record replay: " + e.getMessage());
+            _replay = null;
         }
     }
 
     /**
-     * Returns a randomly generated Piece of the 7 standard Tetris piece configurations.
+     * Adds an input to the replay, and stops recording if it cannot be written.
      */
-    private Piece generatePiece() {
-        int randomNum = (int) (Math.random() * 7);
-        int[][] coords;
-        Color color;
-
-        switch (randomNum) {
-            case 0:
-                coords = Constants.I_PIECE_COORDS;
-                color = Color.TOMATO;
-                break;
-            case 1:
-                coords = Constants.T_PIECE_COORDS;
-                color = Color.LIGHTSALMON;
-                break;
-            case 2:
-                coords = Constants.J_PIECE_COORDS;
-                color = Color.GOLD;
-                break;
-            case 3:
-                coords = Constants.L_PIECE_COORDS;
-                color = Color.YELLOWGREEN;
-                break;
-            case 4:
-                coords = Constants.O_PIECE_COORDS;
-                color = Color.SKYBLUE;
-                break;
-            case 5:
-                coords = Constants.S_PIECE_COORDS;
-                color = Color.ORCHID;
-                break;
-            default:
-                coords = Constants.Z_PIECE_COORDS;
-                color = Color.PINK;
-                break;
-        }
-
-        return new Piece(_gamePane, _board, coords, color);
+    private void recordInput(Input input) {
+        if (_replay == null) {
+            return;
+        }
+        try {
+            _replay.record(_game.getTicks(), input);
+        }
+        catch (IOException e) {
+            System.err.println("Could not record replay: " + e.getMessage());
+            _replay = null;
+        }
     }
 
     /**
-     * Checks if there are any full rows in the board and graphically removes
-     * the Squares in any full row then moves all above rows down.
+     * Finishes the replay at the current tick of the game.
      */
-    public void clearLines() {
-        for (int i = Constants.BORDER; i < _board.length - Constants.BORDER; i++) {
-            if (rowIsFull(i)) {
-                for (int j = Constants.BORDER; j < _board[i].length - Constants.BORDER; j++) {
-                    _gamePane.getChildren().remove(_board[i][j].getSquare());
-                }
-                this.dropRowsAbove(i);
-            }
+    private void closeReplay() {
+        ReplayWriter replay = _replay;
+        if (replay == null) {
+            return;
+        }
+        try {
+            replay.close(_game.getTicks());
+        }
+        catch (IOException e) {
+            System.err.println("Could not record replay: " + e.getMessage());
         }
     }
 
     /**
-     * Checks every Square in the parameter row and returns whether or not the row
-     * is full.
+     * Applies an input to the Game and records it in the replay. Keyboard input
+     * and the Bot both play through here.
      */
-    private boolean rowIsFull(int row) {
-        for (int i = Constants.BORDER; i < _board[row].length - Constants.BORDER; i++) {
-            if (_board[row][i] == null) {
-                return false;
+    private void applyInput(Input input) {
+        this.recordInput(input);
+        _game.input(input);
+        Metrics.recordInput();
+    }
+
+    /**
+     * Moves the game forward by one frame. Applies the queued and repeated key
+     * inputs, lets the Bot place the current piece if it is playing and the
+     * piece spawned since the last step, then ticks the Game.
+     */
+    private void step() {
+        _inputs.step(_applyInput);
+        if (_bot != null && _botTurn) {
+            _botTurn = false;
+            for (Input input: _bot.plan(_game)) {
+                this.applyInput(input);
             }
         }
-        return true;
+        long start = Metrics.start();
+        _game.tick();
+        Metrics.recordTick(start);
     }
 
     /**
-     * Takes the most recently cleared row as a parameter. Goes through every row
-     * from the row above it to the top and shift it doesn one row.
+     * Brings the graphics and the score up to date with what the Game has told
+     * since the last update, and ends the game if the Game said it is over.
+     * Records how long the oldest key press not yet drawn waited to be drawn.
      */
-    private void dropRowsAbove(int row) {
-        for (int i = row; i > Constants.BORDER; i--) {
-            for (int j = Constants.BORDER; j < _board[i].length - Constants.BORDER; j++) {
-                Square fallingSquare = _board[i - 1][j];
-                if (fallingSquare != null) {
-                    fallingSquare.setRow(fallingSquare.getRow() + 1);
-                }
+    private void update() {
+        _renderer.update();
+        if (_pressTime != 0) {
+            Metrics.recordInputLatency(_pressTime);
+            _pressTime = 0;
+        }
+        if (_statusChanged) {
+            this.showStatus();
+        }
 
-                _board[i][j] = fallingSquare;
-            }
+        if (_gameOver && !_ended) {
+            this.endGame();
         }
     }
 
     /**
-     * Checks if a piece has hit the top of the board and if so ends the game.
-     * Stops the timeline, disables keyboard input, and displays a game over message.
+     * Shows the level, lines cleared and score along the top of the board.
      */
-    private void checkGameOver() {
-        for (int i = Constants.BORDER; i < _board[Constants.BORDER].length - Constants.BORDER; i++) {
-            if (_board[Constants.BORDER][i] != null) {
-                _timeline.stop();
-                _gamePane.setOnKeyPressed(null);
-
-                Label gameOver = new Label("Game Over");
-                gameOver.setTranslateX(Constants.GAME_OVER_X);
-                gameOver.setTranslateY(Constants.SCENE_HEIGHT / 2.0);
-                gameOver.setFont(new Font(Constants.GAME_OVER_FONT));
-                _gamePane.getChildren().add(gameOver);
-            }
+    private void showStatus() {
+        _statusChanged = false;
+        _shownScore = _game.getScore();
+        _statusText.setText("Level " + _game.getLevel() + "   Lines " + _game.getLinesCleared() + "   Score " + _shownScore);
+    }
+
+    /**
+     * Ends the game. Stops the frame loop, pauses the game so key presses are
+     * ignored and displays a game over message. The replay has already been
+     * finished when the Game said it was over.
+     */
+    private void endGame() {
+        _timer.stop();
+        _paused = true;
+        _ended = true;
+
+        _gameOverText = new Label("Game Over");
+        _gameOverText.setTranslateX(_viewport.getCols() * Constants.SQUARE_WIDTH / 2 - Constants.GAME_OVER_OFFSET);
+        _gameOverText.setTranslateY(_viewport.getRows() * Constants.SQUARE_WIDTH / 2.0);
+        _gameOverText.setFont(new Font(Constants.GAME_OVER_FONT));
+        _gamePane.getChildren().add(_gameOverText);
+    }
+
+    /**
+     * Saves the game as it is now to the save file.
+     */
+    private void saveGame() {
+        try {
+            GameState.capture(_game).write(_saveFile);
+        }
+        catch (IOException e) {
+            System.err.println("Could not save game: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replaces the game being played with the one in the save file, even after
+     * the game is over, and carries on playing it. Replays start from a seed and
+     * cannot start from a saved game, so the current replay is finished and the
+     * loaded game is not recorded. A save that cannot be read, is damaged or is
+     * for another size of board is reported and the game and its replay carry
+     * on as they were.
+     */
+    private void loadGame() {
+        GameState state;
+        try {
+            state = GameState.read(_saveFile);
+            state.check(_game);
+        }
+        catch (IOException | IllegalArgumentException e) {
+            System.err.println("Could not load game: " + e.getMessage());
+            return;
         }
 
+        this.closeReplay();
+        _replay = null;
+        state.restore(_game);
+        _inputs.clear();
+        if (_ended) {
+            _gamePane.getChildren().remove(_gameOverText);
+            _ended = false;
+            _paused = false;
+            _timer.start();
+        }
+        this.update();
     }
 
     /**
-     * Pauses and unpauses the game by stopping the timeline and changing the
-     * state of _paused which enables or disables keyboard input. Also displays
-     * and hides a pause message.
+     * Pauses and unpauses the game by changing the state of _paused, which stops
+     * the frame loop from stepping and disables keyboard input. Keys held when
+     * the game is paused are forgotten. Also displays and hides a pause message.
      */
     private void togglePause() {
+        if (_game.isGameOver()) {
+            return;
+        }
+
         if (!_paused) {
-            _timeline.pause();
+            _inputs.clear();
             _gamePane.getChildren().add(_pauseText);
         }
         else {
-            _timeline.play();
             _gamePane.getChildren().remove(_pauseText);
         }
         _paused = !_paused;
     }
 
     /**
-     * On every Timeline tick checks if the game is over. If not it continues and
-     * moves the current Piece in play down by one row. If the piece can no longer
-     * move it generates a new piece. It checks for any full rows that need to
-     * be cleared.
+     * Follows the Game's events so the status and the end of the game are only
+     * looked at when they can have changed. The score changes when a piece is
+     * dropped, so it is checked when the piece moves and locks. When the game
+     * ends the replay is finished straight away, on the tick the game ended.
+     * A new or restored piece is the Bot's turn.
      */
-    private class TimeHandler implements EventHandler<ActionEvent> {
+    private class GameHandler implements GameListener {
+        @Override
+        public void pieceSpawned(Piece piece) {
+            _botTurn = true;
+        }
+
+        @Override
+        public void pieceMoved(Piece piece) {
+            if (_game.getScore() != _shownScore) {
+                _statusChanged = true;
+            }
+        }
+
         @Override
-        public void handle(ActionEvent event) {
-            checkGameOver();
+        public void pieceLocked(Piece piece) {
+            _statusChanged = true;
+        }
+
+        @Override
+        public void gameOver() {
+            _gameOver = true;
+            closeReplay();
+        }
+
+        @Override
+        public void gameRestored() {
+            _statusChanged = true;
+            _botTurn = true;
+            _gameOver = _game.isGameOver();
+        }
+    }
+
+    /**
+     * On every pulse adds the time since the last pulse to the time owed and
+     * runs a step for every whole frame of it, then updates the graphics once.
+     * Time spent paused is skipped, and after a long stall only MAX_CATCH_UP
+     * of it is made up, so the game does not race through a burst of steps.
+     */
+    private class FrameTimer extends AnimationTimer {
+        private static final long STEP_NANOS = 1_000_000_000L / Constants.FRAME_RATE;
+        private static final long MAX_CATCH_UP = 250_000_000L;
+
+        private long _last = -1;
+        private long _owed;
 
-            if (!_currPiece.moveY()) {
-                _currPiece = generatePiece();
+        @Override
+        public void handle(long now) {
+            if (_last < 0 || _paused) {
+                _last = now;
+                return;
             }
+            long start = Metrics.start();
+            _owed += Math.min(now - _last, MAX_CATCH_UP);
+            _last = now;
 
-            clearLines();
+            boolean stepped = false;
+            while (_owed >= STEP_NANOS && !_game.isGameOver()) {
+                step();
+                _owed -= STEP_NANOS;
+                stepped = true;
+            }
+            if (stepped) {
+                update();
+            }
+            Metrics.recordFrame(start);
         }
     }
 
     /**
-     * Called on keypress. Moves the current Piece left, right, or down one square
-     * according to the respective key. Rotates 90 degrees counter clockwise
-     * when UP is pressed. Drops the piece to the bottom when SPACE is pressed.
-     * Pauses and unpauses the game when P is pressed. When the game is paused
-     * no other responses to keyboard input are enabled.
+     * Called on key presses and releases. Queues the Input for the key to be
+     * applied on the next step: LEFT, RIGHT and DOWN move the current Piece one
+     * square in that direction and repeat while held, UP rotates it 90 degrees
+     * counter clockwise and SPACE drops it to the bottom. Pauses and unpauses
+     * the game when P is pressed, saves it when S is pressed and loads the
+     * saved game when L is pressed. When the game is paused no moves are
+     * queued.
      */
     private class KeyHandler implements EventHandler<KeyEvent> {
         @Override
         public void handle(KeyEvent event) {
+            boolean pressed = event.getEventType() == KeyEvent.KEY_PRESSED;
             if (!_paused) {
+                Input input = null;
                 if (event.getCode() == KeyCode.LEFT) {
-                    _currPiece.moveX(-1);
+                    input = Input.LEFT;
                 }
                 else if (event.getCode() == KeyCode.RIGHT) {
-                    _currPiece.moveX(1);
+                    input = Input.RIGHT;
                 }
                 else if (event.getCode() == KeyCode.DOWN) {
-                    _currPiece.moveY();
+                    input = Input.SOFT_DROP;
                 }
                 else if (event.getCode() == KeyCode.SPACE) {
-                    // moves _currPiece down by one row at a time until it no longer can
-                    while (_currPiece.moveY());
+                    input = Input.HARD_DROP;
                 }
                 else if (event.getCode() == KeyCode.UP) {
-                    _currPiece.rotate();
+                    input = Input.ROTATE;
+                }
+
+                if (input != null && pressed) {
+                    _inputs.press(input);
+                    if (_pressTime == 0) {
+                        _pressTime = Metrics.start();
+                    }
+                }
+                else if (input != null) {
+                    _inputs.release(input);
                 }
             }
 
-            if (event.getCode() == KeyCode.P) {
+            if (event.getCode() == KeyCode.P && pressed) {
                 togglePause();
             }
+            else if (event.getCode() == KeyCode.S && pressed) {
+                saveGame();
+            }
+            else if (event.getCode() == KeyCode.L && pressed) {
+                loadGame();
+            }
 
             event.consume();
         }
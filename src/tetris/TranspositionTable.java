@@ -0,0 +1,158 @@
+package tetris;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed size cache of search results, keyed by a Zobrist hash, that many
+ * search threads can read and write at once without locking. Lets the Bot reuse
+ * the score of a board and queue it has already searched, whether it was reached
+ * by another order of moves or while placing an earlier piece.
+ *
+ * Each hash maps to a bucket of two entries. The first keeps the result of the
+ * deepest search stored in the bucket and is only replaced by one at least as
+ * deep, since deep results cost the most to work out again. The second always
+ * takes the newest result. Entries are stored with their key XORed with their
+ * value, so an entry torn by two threads writing at once fails the key check
+ * and counts as a miss instead of returning a wrong score.
+ */
+public class TranspositionTable {
+    // low bits of a stored key hold the depth of the search
+    private static final long DEPTH_MASK = 0xf;
+
+    private AtomicLongArray _keys;
+    private AtomicLongArray _values;
+    private int _bucketMask;
+    private LongAdder _hits;
+    private LongAdder _misses;
+    private LongAdder _stores;
+    private LongAdder _evictions;
+
+    /**
+     * Creates a table holding at least the number of entries passed in, rounded
+     * up to a power of two.
+     */
+    public TranspositionTable(int entries) {
+        int buckets = Integer.highestOneBit(Math.max(2, entries - 1) / 2) << 1;
+        _keys = new AtomicLongArray(2 * buckets);
+        _values = new AtomicLongArray(2 * buckets);
+        _bucketMask = buckets - 1;
+        _hits = new LongAdder();
+        _misses = new LongAdder();
+        _stores = new LongAdder();
+        _evictions = new LongAdder();
+    }
+
+    /**
+     * Returns the score stored for the hash and search depth, or NaN if there is
+     * none.
+     */
+    public double get(long hash, int depth) {
+        long key = this.key(hash, depth);
+        int slot = this.bucket(hash);
+        for (int i = slot; i < slot + 2; i++) {
+            long value = _values.get(i);
+            if ((_keys.get(i) ^ value) == key) {
+                _hits.increment();
+                return Double.longBitsToDouble(value);
+            }
+        }
+        _misses.increment();
+        return Double.NaN;
+    }
+
+    /**
+     * Stores the score for the hash and search depth.
+     */
+    public void put(long hash, int depth, double score) {
+        long key = this.key(hash, depth);
+        long value = Double.doubleToLongBits(score);
+        int slot = this.bucket(hash);
+
+        long deepKey = _keys.get(slot) ^ _values.get(slot);
+        if (deepKey == 0 || deepKey == key || depth >= (deepKey & DEPTH_MASK)) {
+            this.store(slot, key, value, deepKey);
+        }
+        else {
+            this.store(slot + 1, key, value, _keys.get(slot + 1) ^ _values.get(slot + 1));
+        }
+    }
+
+    /**
+     * Writes an entry into a slot, counting it as an eviction if it replaces the
+     * result for a different key.
+     */
+    private void store(int slot, long key, long value, long oldKey) {
+        if (oldKey != 0 && oldKey != key) {
+            _evictions.increment();
+        }
+        _values.lazySet(slot, value);
+        _keys.lazySet(slot, key ^ value);
+        _stores.increment();
+    }
+
+    /**
+     * Returns the key stored for a hash and depth.
+     */
+    private long key(long hash, int depth) {
+        return hash & ~DEPTH_MASK | Math.min(depth, DEPTH_MASK);
+    }
+
+    /**
+     * Returns the first slot of the bucket for a hash.
+     */
+    private int bucket(long hash) {
+        return ((int) (hash ^ (hash >>> 32)) & _bucketMask) << 1;
+    }
+
+    /**
+     * Empties the table and resets its counters.
+     */
+    public void clear() {
+        for (int i = 0; i < _keys.length(); i++) {
+            _keys.set(i, 0);
+            _values.set(i, 0);
+        }
+        _hits.reset();
+        _misses.reset();
+        _stores.reset();
+        _evictions.reset();
+    }
+
+    /**
+     * Returns the number of lookups that found a stored score.
+     */
+    public long getHits() {
+        return _hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that found nothing.
+     */
+    public long getMisses() {
+        return _misses.sum();
+    }
+
+    /**
+     * Returns the number of scores stored.
+     */
+    public long getStores() {
+        return _stores.sum();
+    }
+
+    /**
+     * Returns the number of stored scores that replaced a score for a different
+     * state.
+     */
+    public long getEvictions() {
+        return _evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        long lookups = this.getHits() + this.getMisses();
+        return String.format("%d hits, %d misses (%.1f%% hit rate), %d stores, %d evictions",
+                this.getHits(), this.getMisses(), lookups == 0 ? 0.0 : 100.0 * this.getHits() / lookups,
+                this.getStores(), this.getEvictions());
+    }
+}
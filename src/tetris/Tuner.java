@@ -0,0 +1,348 @@
+package tetris;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Evolves Weights for the Bot with a genetic algorithm. Every set of weights in
+ * the population plays the same seeded games without a display, and its fitness
+ * is the total number of lines it clears. Each generation the weakest sets are
+ * replaced by children of strong sets picked by tournament, and children are
+ * sometimes mutated. Weights are kept at unit length, since only their ratios
+ * change which placement the Bot picks.
+ *
+ * All the games of a generation run in parallel and their results are taken in
+ * the order they finish, so a set of weights is scored, printed and saved to
+ * the checkpoint as soon as its own games are done. A run stopped at any point
+ * carries on from the checkpoint, keeping the scores of the sets that were
+ * done. Only whole sets are saved, so every game of a set that was partly
+ * played is played again. The best weights so far are always saved to a file
+ * that the game reads with --weights=<file>.
+ *
+ * Run with java -cp tetris.jar tetris.Tuner followed by any of
+ * --population=N, --games=N, --max-pieces=N, --depth=N, --generations=N,
+ * --seed=S, --threads=N, --checkpoint=file and --output=file.
+ */
+public class Tuner {
+    // share of the population replaced by children every generation
+    private static final double REPLACED = 0.3;
+    // share of the population drawn into each tournament
+    private static final double TOURNAMENT = 0.1;
+    // chance of a child being mutated, and the most a mutation changes a weight
+    private static final double MUTATION_RATE = 0.05;
+    private static final double MUTATION_SIZE = 0.2;
+
+    private int _games;
+    private int _maxPieces;
+    private int _depth;
+    private long _seed;
+    private int _generation;
+    private double[][] _population;
+    private double[] _fitness;
+
+    /**
+     * Creates a random population of the size passed in. Each set of weights
+     * plays the games seeded seed to seed + games - 1, stopping a game after
+     * maxPieces pieces, with the Bot looking depth pieces ahead.
+     */
+    public Tuner(int populationSize, int games, int maxPieces, int depth, long seed) {
+        _games = games;
+        _maxPieces = maxPieces;
+        _depth = depth;
+        _seed = seed;
+        _generation = 0;
+        _population = new double[populationSize][];
+        _fitness = new double[populationSize];
+
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < populationSize; i++) {
+            double[] weights = new double[Weights.NAMES.length];
+            for (int j = 0; j < weights.length; j++) {
+                weights[j] = random.nextDouble() - 0.5;
+            }
+            _population[i] = normalize(weights);
+            _fitness[i] = Double.NaN;
+        }
+    }
+
+    /**
+     * Plays one seeded game with the weights and returns how many lines it
+     * cleared. The Bot searches on the calling thread without a transposition
+     * table, since many games already run at once.
+     */
+    private int playGame(double[] weights, long seed) {
+        Game game = new Game(seed);
+        Bot bot = new Bot(new Weights(weights), _depth, null, null);
+        while (!game.isGameOver() && game.getPiecesPlaced() < _maxPieces) {
+            bot.play(game);
+        }
+        return game.getLinesCleared();
+    }
+
+    /**
+     * Plays the games of every set of weights that has no fitness yet on the
+     * executor. Results are collected as the games finish, and a set's fitness
+     * is printed and checkpointed as soon as all of its games are in.
+     */
+    public void evaluate(ExecutorService executor, Path checkpoint) throws InterruptedException, ExecutionException, IOException {
+        CompletionService<int[]> results = new ExecutorCompletionService<>(executor);
+        int[] lines = new int[_population.length];
+        int[] remaining = new int[_population.length];
+        int submitted = 0;
+        for (int i = 0; i < _population.length; i++) {
+            if (!Double.isNaN(_fitness[i])) {
+                continue;
+            }
+            remaining[i] = _games;
+            for (int g = 0; g < _games; g++) {
+                int individual = i;
+                long seed = _seed + g;
+                results.submit(() -> new int[] { individual, this.playGame(_population[individual], seed) });
+                submitted++;
+            }
+        }
+
+        for (int n = 0; n < submitted; n++) {
+            int[] result = results.take().get();
+            int individual = result[0];
+            lines[individual] += result[1];
+            remaining[individual]--;
+            if (remaining[individual] == 0) {
+                _fitness[individual] = lines[individual];
+                System.out.printf("generation %d, weights %d: %d lines over %d games (%d of %d games done)%n", _generation,
+                        individual, lines[individual], _games, n + 1, submitted);
+                if (checkpoint != null) {
+                    this.saveCheckpoint(checkpoint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the weakest sets of weights with children of sets chosen by
+     * tournament and moves on to the next generation. Every set must have been
+     * evaluated. The random choices depend only on the seed and the generation,
+     * so a resumed run breeds the same children.
+     */
+    public void breed() {
+        SplittableRandom random = new SplittableRandom(_seed ^ (0x9E3779B97F4A7C15L * (_generation + 1)));
+        int count = Math.max(1, (int) (_population.length * REPLACED));
+        double[][] children = new double[count][];
+        for (int c = 0; c < count; c++) {
+            children[c] = this.makeChild(random);
+        }
+
+        Integer[] order = this.rank();
+        for (int c = 0; c < count; c++) {
+            int weakest = order[order.length - 1 - c];
+            _population[weakest] = children[c];
+            _fitness[weakest] = Double.NaN;
+        }
+        _generation++;
+    }
+
+    /**
+     * Picks the two fittest of a random sample of the population and returns
+     * their average weighted by fitness, sometimes mutated.
+     */
+    private double[] makeChild(SplittableRandom random) {
+        int size = Math.max(2, (int) (_population.length * TOURNAMENT));
+        int first = -1;
+        int second = -1;
+        for (int i = 0; i < size; i++) {
+            int pick = random.nextInt(_population.length);
+            if (first < 0 || _fitness[pick] > _fitness[first]) {
+                second = first;
+                first = pick;
+            }
+            else if (second < 0 || _fitness[pick] > _fitness[second]) {
+                second = pick;
+            }
+        }
+
+        double firstFitness = _fitness[first];
+        double secondFitness = _fitness[second];
+        if (firstFitness + secondFitness == 0) {
+            firstFitness = 1;
+            secondFitness = 1;
+        }
+        double[] child = new double[Weights.NAMES.length];
+        for (int j = 0; j < child.length; j++) {
+            child[j] = firstFitness * _population[first][j] + secondFitness * _population[second][j];
+        }
+        if (random.nextDouble() < MUTATION_RATE) {
+            child[random.nextInt(child.length)] += (random.nextDouble() * 2 - 1) * MUTATION_SIZE;
+        }
+        return normalize(child);
+    }
+
+    /**
+     * Returns the indices of the population from the fittest to the weakest.
+     */
+    private Integer[] rank() {
+        Integer[] order = new Integer[_population.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(_fitness[b], _fitness[a]));
+        return order;
+    }
+
+    /**
+     * Scales the weights to unit length.
+     */
+    private static double[] normalize(double[] weights) {
+        double length = 0;
+        for (double weight: weights) {
+            length += weight * weight;
+        }
+        length = Math.sqrt(length);
+        if (length > 0) {
+            for (int j = 0; j < weights.length; j++) {
+                weights[j] /= length;
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Returns the fittest weights evaluated so far.
+     */
+    public Weights getBest() {
+        return new Weights(_population[this.rank()[0]]);
+    }
+
+    /**
+     * Returns the fitness of the fittest weights evaluated so far.
+     */
+    public double getBestFitness() {
+        return _fitness[this.rank()[0]];
+    }
+
+    /**
+     * Returns how many generations have been bred.
+     */
+    public int getGeneration() {
+        return _generation;
+    }
+
+    /**
+     * Writes the settings, the generation, the population and the fitness of
+     * every set of weights evaluated so far to a file. The file is written
+     * next to the checkpoint and then moved over it, so a run stopped while
+     * saving keeps the last checkpoint.
+     */
+    public void saveCheckpoint(Path path) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("games", Integer.toString(_games));
+        properties.setProperty("maxPieces", Integer.toString(_maxPieces));
+        properties.setProperty("depth", Integer.toString(_depth));
+        properties.setProperty("seed", Long.toString(_seed));
+        properties.setProperty("generation", Integer.toString(_generation));
+        properties.setProperty("population", Integer.toString(_population.length));
+        for (int i = 0; i < _population.length; i++) {
+            StringBuilder weights = new StringBuilder();
+            for (int j = 0; j < _population[i].length; j++) {
+                weights.append(j > 0 ? "," : "").append(_population[i][j]);
+            }
+            properties.setProperty("weights." + i, weights.toString());
+            properties.setProperty("fitness." + i, Double.toString(_fitness[i]));
+        }
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            properties.store(writer, "Tuner checkpoint");
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a Tuner back from a checkpoint, with the settings it was started
+     * with.
+     */
+    public static Tuner loadCheckpoint(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+
+        try {
+            int size = Integer.parseInt(properties.getProperty("population"));
+            Tuner tuner = new Tuner(size, Integer.parseInt(properties.getProperty("games")),
+                    Integer.parseInt(properties.getProperty("maxPieces")), Integer.parseInt(properties.getProperty("depth")),
+                    Long.parseLong(properties.getProperty("seed")));
+            tuner._generation = Integer.parseInt(properties.getProperty("generation"));
+            for (int i = 0; i < size; i++) {
+                String[] weights = properties.getProperty("weights." + i).split(",");
+                for (int j = 0; j < weights.length; j++) {
+                    tuner._population[i][j] = Double.parseDouble(weights[j]);
+                }
+                tuner._fitness[i] = Double.parseDouble(properties.getProperty("fitness." + i));
+            }
+            return tuner;
+        }
+        catch (NullPointerException | NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException(path + " is not a tuner checkpoint", e);
+        }
+    }
+
+    /**
+     * Reads the options, resumes from the checkpoint if there is one, and runs
+     * generations until the number asked for have been evaluated, saving the
+     * best weights after every generation.
+     */
+    public static void main(String[] argv) throws InterruptedException, ExecutionException, IOException {
+        Map<String, String> options = Settings.parseArguments(argv);
+        int generations = Integer.parseInt(options.getOrDefault("generations", "20"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+        Path checkpoint = Paths.get(options.getOrDefault("checkpoint", "tuner.checkpoint"));
+        Path output = Paths.get(options.getOrDefault("output", "weights.properties"));
+
+        Tuner tuner;
+        if (Files.exists(checkpoint)) {
+            tuner = loadCheckpoint(checkpoint);
+            System.out.println("Resuming from " + checkpoint + " at generation " + tuner.getGeneration());
+        }
+        else {
+            tuner = new Tuner(Integer.parseInt(options.getOrDefault("population", "100")),
+                    Integer.parseInt(options.getOrDefault("games", "5")),
+                    Integer.parseInt(options.getOrDefault("max-pieces", "500")),
+                    Integer.parseInt(options.getOrDefault("depth", "1")),
+                    Long.parseLong(options.getOrDefault("seed", "1")));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            while (true) {
+                tuner.evaluate(executor, checkpoint);
+                Weights best = tuner.getBest();
+                best.save(output);
+                System.out.printf("generation %d best: %.0f lines with %s%n", tuner.getGeneration(), tuner.getBestFitness(), best);
+                if (tuner.getGeneration() + 1 >= generations) {
+                    break;
+                }
+                tuner.breed();
+                tuner.saveCheckpoint(checkpoint);
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        System.out.println("Best weights saved to " + output);
+    }
+}
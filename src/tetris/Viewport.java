@@ -0,0 +1,110 @@
+package tetris;
+
+/**
+ * The part of the board that is shown on the screen, for boards too big to show
+ * whole. It covers a fixed number of rows and columns, counting the border, and
+ * scrolls to keep the falling piece inside it with a margin of cells around it,
+ * but never past the edges of the board. A board that fits in the view is shown
+ * whole and never scrolls. Has no graphics of its own, the renderer asks it
+ * which cells to draw and where.
+ */
+public class Viewport {
+    private int _height;
+    private int _width;
+    private int _rows;
+    private int _cols;
+    private int _rowMargin;
+    private int _colMargin;
+    private int _top;
+    private int _left;
+
+    /**
+     * Takes the height and width of the board, counting the border, the most
+     * rows and columns to show at once and the margin to keep around the piece.
+     * The margin is made smaller if the view is too small to keep it on both
+     * sides of a piece.
+     */
+    public Viewport(int height, int width, int rows, int cols, int margin) {
+        _height = height;
+        _width = width;
+        _rows = Math.min(rows, height);
+        _cols = Math.min(cols, width);
+        _rowMargin = Math.max(0, Math.min(margin, (_rows - Shapes.SQUARES) / 2));
+        _colMargin = Math.max(0, Math.min(margin, (_cols - Shapes.SQUARES) / 2));
+    }
+
+    /**
+     * Scrolls as little as needed to keep every square of the piece the margin
+     * away from the edges of the view. Returns whether the view moved.
+     */
+    public boolean follow(Piece piece) {
+        int minRow = Integer.MAX_VALUE;
+        int maxRow = Integer.MIN_VALUE;
+        int minCol = Integer.MAX_VALUE;
+        int maxCol = Integer.MIN_VALUE;
+        for (int i = 0; i < piece.size(); i++) {
+            minRow = Math.min(minRow, piece.getRow(i));
+            maxRow = Math.max(maxRow, piece.getRow(i));
+            minCol = Math.min(minCol, piece.getCol(i));
+            maxCol = Math.max(maxCol, piece.getCol(i));
+        }
+
+        int top = this.scroll(_top, _rows, _height, minRow - _rowMargin, maxRow + _rowMargin);
+        int left = this.scroll(_left, _cols, _width, minCol - _colMargin, maxCol + _colMargin);
+        if (top == _top && left == _left) {
+            return false;
+        }
+        _top = top;
+        _left = left;
+        return true;
+    }
+
+    /**
+     * Returns where a view of the size starting at start has to start along one
+     * axis to cover first to last, kept inside a board of the length.
+     */
+    private int scroll(int start, int size, int length, int first, int last) {
+        if (first < start) {
+            start = first;
+        }
+        else if (last >= start + size) {
+            start = last - size + 1;
+        }
+        return Math.max(0, Math.min(start, length - size));
+    }
+
+    /**
+     * Returns whether the cell is inside the view.
+     */
+    public boolean contains(int row, int col) {
+        return row >= _top && row < _top + _rows && col >= _left && col < _left + _cols;
+    }
+
+    /**
+     * Returns the board row shown along the top of the view.
+     */
+    public int getTop() {
+        return _top;
+    }
+
+    /**
+     * Returns the board column shown along the left of the view.
+     */
+    public int getLeft() {
+        return _left;
+    }
+
+    /**
+     * Returns the number of rows shown.
+     */
+    public int getRows() {
+        return _rows;
+    }
+
+    /**
+     * Returns the number of columns shown.
+     */
+    public int getCols() {
+        return _cols;
+    }
+}
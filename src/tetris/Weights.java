@@ -0,0 +1,119 @@
+package tetris;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * How much each feature of a board counts when the Bot scores a placement.
+ * Features that make a board worse have negative weights. The defaults are a
+ * commonly used hand-tuned set, and Tuner can evolve better ones and save them
+ * to a file that load() reads back in.
+ */
+public class Weights {
+    // names of the weights, in the order used by toArray and in weight files
+    public static final String[] NAMES = { "holes", "aggregateHeight", "bumpiness", "wells", "lines" };
+
+    private double _holes;
+    private double _aggregateHeight;
+    private double _bumpiness;
+    private double _wells;
+    private double _lines;
+
+    /**
+     * Creates the default weights, which do not count wells.
+     */
+    public Weights() {
+        this(-0.35663, -0.510066, -0.184483, 0, 0.760666);
+    }
+
+    /**
+     * Creates weights with the values passed in.
+     */
+    public Weights(double holes, double aggregateHeight, double bumpiness, double wells, double lines) {
+        _holes = holes;
+        _aggregateHeight = aggregateHeight;
+        _bumpiness = bumpiness;
+        _wells = wells;
+        _lines = lines;
+    }
+
+    /**
+     * Creates weights from an array in the order of NAMES.
+     */
+    public Weights(double[] values) {
+        this(values[0], values[1], values[2], values[3], values[4]);
+    }
+
+    /**
+     * Returns the weights as an array in the order of NAMES.
+     */
+    public double[] toArray() {
+        return new double[] { _holes, _aggregateHeight, _bumpiness, _wells, _lines };
+    }
+
+    /**
+     * Returns the score of the shape of the board, not counting cleared lines.
+     */
+    public double scoreBoard(Board board) {
+        double score = _holes * Features.holes(board)
+                + _aggregateHeight * Features.aggregateHeight(board)
+                + _bumpiness * Features.bumpiness(board);
+        if (_wells != 0) {
+            score += _wells * Features.wells(board);
+        }
+        return score;
+    }
+
+    /**
+     * Returns the score of clearing the number of lines.
+     */
+    public double scoreLines(int lines) {
+        return _lines * lines;
+    }
+
+    /**
+     * Writes the weights to a file as name=value lines.
+     */
+    public void save(Path path) throws IOException {
+        Properties properties = new Properties();
+        double[] values = this.toArray();
+        for (int i = 0; i < NAMES.length; i++) {
+            properties.setProperty(NAMES[i], Double.toString(values[i]));
+        }
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            properties.store(writer, "Bot weights");
+        }
+    }
+
+    /**
+     * Reads weights written by save(). Weights missing from the file are 0.
+     */
+    public static Weights load(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+
+        double[] values = new double[NAMES.length];
+        for (int i = 0; i < NAMES.length; i++) {
+            try {
+                values[i] = Double.parseDouble(properties.getProperty(NAMES[i], "0"));
+            }
+            catch (NumberFormatException e) {
+                throw new IOException("Bad value for " + NAMES[i] + " in " + path, e);
+            }
+        }
+        return new Weights(values);
+    }
+
+    @Override
+    public String toString() {
+        return "holes=" + _holes + " aggregateHeight=" + _aggregateHeight + " bumpiness=" + _bumpiness
+                + " wells=" + _wells + " lines=" + _lines;
+    }
+}
@@ -0,0 +1,62 @@
+package tetris;
+
+/**
+ * Zobrist-style hashing of search states for the TranspositionTable. Every
+ * filled cell and queue entry has its own 64 bit key, and a state's hash is all
+ * of its keys XORed together, so the same state hashes the same however it was
+ * reached. The piece to place has no key of its own: the Bot only looks up
+ * states where it has just spawned, so it is the first entry of the queue.
+ * Keys are made by mixing the cell or entry number with the SplitMix64
+ * finalizer instead of being stored in tables, so any size of board works.
+ */
+public final class Zobrist {
+    private static final long CELL_SEED = 0x5bd1e9955bd1e995L;
+    private static final long QUEUE_SEED = 0x9e3779b97f4a7c15L;
+
+    private Zobrist() {
+    }
+
+    /**
+     * Returns the hash of the filled cells in the playable space of the board.
+     * Colors are not part of the hash since they do not change how the game
+     * plays.
+     */
+    public static long hash(Board board) {
+        long hash = 0;
+        int right = board.getWidth() - Constants.BORDER;
+        for (int i = board.getStackTop(); i < board.getHeight() - Constants.BORDER; i++) {
+            for (int w = 0; w < board.getWords(); w++) {
+                long bits = board.getRowBits(i, w);
+                while (bits != 0) {
+                    int col = w << 6 | Long.numberOfTrailingZeros(bits);
+                    if (col >= Constants.BORDER && col < right) {
+                        hash ^= mix(CELL_SEED + ((long) i << 16 | col));
+                    }
+                    bits &= bits - 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the key of the pieces still to be placed, the types from the index
+     * to the end of the array, numbered from the first piece still to come.
+     */
+    public static long queue(int[] types, int index) {
+        long hash = mix(QUEUE_SEED + types.length - index);
+        for (int i = index; i < types.length; i++) {
+            hash ^= mix(QUEUE_SEED + ((long) (i - index + 1) << 8 | types[i]));
+        }
+        return hash;
+    }
+
+    /**
+     * Scrambles a number into a key with the SplitMix64 finalizer.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}